@@ -0,0 +1,90 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merging the artifact lists of N dependencies into one sorted list, where
+ * neighbouring lists overlap by half, like nested aggregates do.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AggregateBenchmark
+{
+    private static final int ARTIFACTS_PER_LIST = 200;
+
+    @Param( { "10", "100", "400" } )
+    public int lists;
+
+    private List<List<String>> chunks;
+
+    @Setup
+    public void setUp()
+    {
+        chunks = new ArrayList<List<String>>( lists );
+        for ( int i = 0; i < lists; i++ )
+        {
+            List<String> chunk = SyntheticArtifacts.lines( i
+                                                           * ARTIFACTS_PER_LIST
+                                                           / 2,
+                    ARTIFACTS_PER_LIST );
+            Collections.sort( chunk );
+            chunks.add( chunk );
+        }
+    }
+
+    @Benchmark
+    public List<String> kWayMerge()
+    {
+        return ArtifactListMerger.merge( chunks );
+    }
+
+    @Benchmark
+    public SortedSet<String> treeSet()
+    {
+        SortedSet<String> aggregate = new TreeSet<String>();
+        for ( List<String> chunk : chunks )
+        {
+            aggregate.addAll( chunk );
+        }
+        return aggregate;
+    }
+}
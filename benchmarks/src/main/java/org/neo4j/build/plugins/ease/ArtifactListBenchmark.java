@@ -0,0 +1,124 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading a whole artifact list, from the text format and from the binary
+ * index.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ArtifactListBenchmark
+{
+    @Param( { "10", "1000", "100000" } )
+    public int artifacts;
+
+    private File dir;
+
+    private File textList;
+
+    private File indexedList;
+
+    @Setup
+    public void setUp() throws IOException, MojoExecutionException
+    {
+        dir = SyntheticArtifacts.createTempDirectory( "ease-list" );
+        List<String> lines = SyntheticArtifacts.lines( 0, artifacts );
+        textList = new File( dir, "text-artifacts.txt" );
+        SyntheticArtifacts.write( textList, lines );
+        indexedList = new File( dir, "indexed-artifacts.txt" );
+        SyntheticArtifacts.write( indexedList, lines );
+        OutputStream out = new FileOutputStream(
+                ArtifactListIndex.indexFileFor( indexedList ) );
+        try
+        {
+            ArtifactListIndex.write( lines, out );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        SyntheticArtifacts.delete( dir );
+    }
+
+    @Benchmark
+    public void readText( Blackhole blackhole ) throws IOException,
+            MojoExecutionException
+    {
+        read( textList, blackhole );
+    }
+
+    @Benchmark
+    public void readIndex( Blackhole blackhole ) throws IOException,
+            MojoExecutionException
+    {
+        read( indexedList, blackhole );
+    }
+
+    private static void read( File list, Blackhole blackhole )
+            throws IOException, MojoExecutionException
+    {
+        ArtifactListReader reader = ArtifactListReader.open( list,
+                new SystemStreamLog() );
+        try
+        {
+            ArtifactListEntry entry;
+            while ( ( entry = reader.nextEntry() ) != null )
+            {
+                blackhole.consume( entry );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Coordinate parsing as done by the attach goal, and coordinate building as
+ * done by the freeze goal. Scores are per artifact.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CoordinatesBenchmark
+{
+    private static final int ARTIFACTS = 1000;
+
+    private String[] lines;
+
+    private String[] entryLines;
+
+    private static final String CHECKSUM = "sha256:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Setup
+    public void setUp()
+    {
+        List<String> coordinates = SyntheticArtifacts.lines( 0, ARTIFACTS );
+        lines = coordinates.toArray( new String[ARTIFACTS] );
+        entryLines = new String[ARTIFACTS];
+        for ( int i = 0; i < ARTIFACTS; i++ )
+        {
+            entryLines[i] = lines[i] + ' ' + ( 1024L * i ) + ' ' + CHECKSUM;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ARTIFACTS )
+    public void parseCoordinates( Blackhole blackhole )
+            throws MojoExecutionException
+    {
+        CoordinatesPool pool = new CoordinatesPool();
+        for ( String line : lines )
+        {
+            blackhole.consume( Coordinates.parse( line, pool ) );
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ARTIFACTS )
+    public void parseEntryWithChecksum( Blackhole blackhole )
+            throws MojoExecutionException
+    {
+        CoordinatesPool pool = new CoordinatesPool();
+        for ( String line : entryLines )
+        {
+            blackhole.consume( ArtifactListEntry.parse( line, pool ) );
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( ARTIFACTS )
+    public void buildCoordinates( Blackhole blackhole )
+    {
+        CoordinatesPool pool = new CoordinatesPool();
+        for ( int i = 0; i < ARTIFACTS; i++ )
+        {
+            blackhole.consume( pool.coordinates(
+                    SyntheticArtifacts.groupId( i ),
+                    SyntheticArtifacts.artifactId( i ),
+                    SyntheticArtifacts.type( i ),
+                    SyntheticArtifacts.classifier( i ),
+                    SyntheticArtifacts.version( i ) )
+                    .toString() );
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Staging every file of a synthetic artifact repository into an empty build
+ * directory, under the repository layout the plugin stages to.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class StagingBenchmark
+{
+    private static final int FILE_SIZE = 4096;
+
+    @Param( { "10", "1000", "100000" } )
+    public int artifacts;
+
+    @Param( { "copy", "hardlink", "symlink" } )
+    public String mode;
+
+    private File dir;
+
+    private List<File> files;
+
+    private List<Artifact> artifactList;
+
+    private File buildDir;
+
+    private StagingMode staging;
+
+    @Setup( Level.Trial )
+    public void createRepository() throws Exception
+    {
+        dir = SyntheticArtifacts.createTempDirectory( "ease-staging" );
+        files = SyntheticArtifacts.repository( new File( dir, "repository" ),
+                artifacts, FILE_SIZE );
+        artifactList = new ArrayList<Artifact>( artifacts );
+        for ( int i = 0; i < artifacts; i++ )
+        {
+            artifactList.add( new DefaultArtifact(
+                    SyntheticArtifacts.groupId( i ),
+                    SyntheticArtifacts.artifactId( i ),
+                    VersionRange.createFromVersion( SyntheticArtifacts.version( i ) ),
+                    null, SyntheticArtifacts.type( i ),
+                    SyntheticArtifacts.classifier( i ),
+                    new DefaultArtifactHandler( SyntheticArtifacts.type( i ) ) ) );
+        }
+        staging = StagingMode.fromString( mode, new SystemStreamLog() );
+    }
+
+    @Setup( Level.Iteration )
+    public void createBuildDirectory()
+    {
+        buildDir = new File( dir, "target" );
+        SyntheticArtifacts.delete( buildDir );
+        buildDir.mkdirs();
+    }
+
+    @TearDown( Level.Trial )
+    public void deleteRepository()
+    {
+        SyntheticArtifacts.delete( dir );
+    }
+
+    @Benchmark
+    public void stage() throws IOException
+    {
+        String buildDirectory = buildDir.getPath();
+        for ( int i = 0; i < artifacts; i++ )
+        {
+            File destination = EaseHelper.stagedFile( buildDirectory,
+                    artifactList.get( i ) );
+            Files.createDirectories( destination.getParentFile()
+                    .toPath() );
+            staging.stage( files.get( i ), destination );
+        }
+    }
+}
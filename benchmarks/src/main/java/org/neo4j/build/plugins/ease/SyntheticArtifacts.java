@@ -0,0 +1,146 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates artifact lists and artifact repositories for the benchmarks.
+ */
+final class SyntheticArtifacts
+{
+    private SyntheticArtifacts()
+    {
+    }
+
+    /**
+     * @return artifact list lines for the given number of artifacts, starting
+     *         at an offset so lists can be made to overlap.
+     */
+    static List<String> lines( int offset, int count )
+    {
+        List<String> lines = new ArrayList<String>( count );
+        CoordinatesPool pool = new CoordinatesPool();
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            lines.add( pool.coordinates( groupId( i ), artifactId( i ),
+                    type( i ), classifier( i ), version( i ) )
+                    .toString() );
+        }
+        return lines;
+    }
+
+    static String groupId( int i )
+    {
+        return "org.example.group" + ( i % 20 );
+    }
+
+    static String artifactId( int i )
+    {
+        return "artifact-" + ( i / 3 );
+    }
+
+    static String type( int i )
+    {
+        return i % 3 == 2 ? "pom" : "jar";
+    }
+
+    static String classifier( int i )
+    {
+        return i % 3 == 1 ? "sources" : null;
+    }
+
+    static String version( int i )
+    {
+        return "1." + ( i % 5 );
+    }
+
+    /**
+     * Creates a repository layout directory with one file per artifact.
+     * 
+     * @return the files, in artifact order.
+     */
+    static List<File> repository( File root, int count, int fileSize )
+            throws IOException
+    {
+        byte[] content = new byte[fileSize];
+        List<File> files = new ArrayList<File>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            String artifactId = artifactId( i );
+            File dir = new File( root, groupId( i ).replace( '.', '/' ) + '/'
+                                       + artifactId + '/' + version( i ) );
+            dir.mkdirs();
+            String classifier = classifier( i );
+            File file = new File( dir, artifactId + '-' + version( i )
+                                       + ( classifier == null ? "" : "-"
+                                                                     + classifier )
+                                       + '.' + type( i ) );
+            content[0] = (byte) i;
+            OutputStream out = new FileOutputStream( file );
+            try
+            {
+                out.write( content );
+            }
+            finally
+            {
+                out.close();
+            }
+            files.add( file );
+        }
+        return files;
+    }
+
+    static void write( File file, List<String> lines ) throws IOException
+    {
+        StringBuilder builder = new StringBuilder( lines.size() * 64 );
+        for ( String line : lines )
+        {
+            builder.append( line )
+                    .append( '\n' );
+        }
+        Files.write( file.toPath(), builder.toString()
+                .getBytes( "UTF-8" ) );
+    }
+
+    static File createTempDirectory( String prefix ) throws IOException
+    {
+        return Files.createTempDirectory( prefix )
+                .toFile();
+    }
+
+    static void delete( File file )
+    {
+        File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+}
@@ -20,11 +20,18 @@ package org.neo4j.build.plugins.ease;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -33,6 +40,10 @@ import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactCollector;
 import org.apache.maven.artifact.resolver.filter.AndArtifactFilter;
 import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -42,8 +53,7 @@ import org.apache.maven.shared.artifact.filter.StrictPatternIncludesArtifactFilt
 import org.apache.maven.shared.dependency.tree.DependencyNode;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
-import org.apache.maven.shared.dependency.tree.traversal.CollectingDependencyNodeVisitor;
-import org.codehaus.plexus.util.FileUtils;
+import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
 
 /**
  * Aggregates multiple artifact lists into a single list and attaches it to the
@@ -56,6 +66,13 @@ import org.codehaus.plexus.util.FileUtils;
  * Note: Every included dependency must have an -artifacts.txt file, or the
  * plugin will fail the build.
  * 
+ * Artifact lists read by one aggregate execution are kept for the rest of the
+ * build session, so other aggregates depending on the same lists don't read
+ * them again.
+ * 
+ * With manifestTree set, the list holds references to the lists of the
+ * dependencies instead of their content, which the attach goal expands.
+ * 
  * @goal aggregate
  * @phase package
  * @requiresProject true
@@ -63,6 +80,8 @@ import org.codehaus.plexus.util.FileUtils;
  */
 public class AggregateMojo extends AbstractMojo
 {
+    private static final String REFERENCE_CHECKSUM = "sha256";
+
     /**
      * Patterns for artifacts to include. The pattern format is:
      * [groupId]:[artifactId]:[type]:[version]
@@ -86,6 +105,52 @@ public class AggregateMojo extends AbstractMojo
      */
     protected boolean excludeTransitive;
 
+    /**
+     * Also attach a binary index of the artifact list, as the -artifacts.idx
+     * artifact. Consumers prefer the index over the text list when present.
+     * 
+     * @parameter expression="${writeIndex}" default-value="false"
+     */
+    protected boolean writeIndex;
+
+    /**
+     * Number of threads used to read the artifact lists of the dependencies,
+     * 0 means one thread per processor.
+     * 
+     * @parameter expression="${aggregateThreads}" default-value="0"
+     */
+    protected int aggregateThreads;
+
+    /**
+     * If we should cache the filtered dependency set in the build directory,
+     * and reuse it as long as the dependency declarations and the filter
+     * configuration are unchanged. Disable it to pick up changes in the
+     * dependencies of the dependencies.
+     * 
+     * @parameter expression="${ease.aggregate.cache}" default-value="true"
+     */
+    protected boolean useCache;
+
+    /**
+     * If we should write a reference to the artifact list of every dependency,
+     * by its coordinates, size and checksum, instead of copying the content of
+     * the lists. Building the aggregate then only depends on the number of
+     * direct children, not on the number of artifacts below them. The attach
+     * goal reads the referenced lists in place of the references.
+     * 
+     * @parameter expression="${ease.aggregate.tree}" default-value="false"
+     */
+    protected boolean manifestTree;
+
+    /**
+     * Write a JSON report of the time spent building the dependency tree,
+     * looking up, reading and merging the artifact lists, with the latency per
+     * dependency, to ease-aggregate-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    protected boolean writeReport;
+
     /**
      * @parameter default-value="${project}"
      * @required
@@ -93,6 +158,13 @@ public class AggregateMojo extends AbstractMojo
      */
     private MavenProject project;
 
+    /**
+     * @parameter default-value="${session}"
+     * @required
+     * @readonly
+     */
+    private MavenSession session;
+
     /**
      * Used to create artifact instances.
      * 
@@ -137,49 +209,296 @@ public class AggregateMojo extends AbstractMojo
      */
     private ArtifactCollector artifactCollector;
 
+    private TimingReport report = null;
+
     @Override
     public void execute() throws MojoExecutionException
     {
-        SortedSet<String> aggregate = new TreeSet<String>();
-        for ( Artifact dependency : getDependencies() )
+        report = new TimingReport( "aggregate", project.getId() );
+        try
+        {
+            aggregate();
+        }
+        finally
+        {
+            if ( writeReport )
+            {
+                report.write( project.getBuild()
+                        .getDirectory(), getLog() );
+            }
+        }
+    }
+
+    private void aggregate() throws MojoExecutionException
+    {
+        final ArtifactListCache cache = ArtifactListCache.forSession( session );
+        Map<String, MavenProject> reactorProjects = new HashMap<String, MavenProject>();
+        for ( MavenProject reactorProject : session.getProjects() )
+        {
+            reactorProjects.put( reactorProject.getGroupId() + ':'
+                                 + reactorProject.getArtifactId() + ':'
+                                 + reactorProject.getVersion(), reactorProject );
+        }
+        List<Future<List<String>>> chunks = new ArrayList<Future<List<String>>>();
+        ExecutorService executor = EaseHelper.newExecutor( aggregateThreads );
+        List<String> aggregate;
+        try
         {
-            Artifact findArtifactsArtifact = artifactFactory.createArtifactWithClassifier(
-                    dependency.getGroupId(), dependency.getArtifactId(),
-                    dependency.getVersion(), "txt", "artifacts" );
-            Artifact artifactsArtifact = localRepository.find( findArtifactsArtifact );
-            File artifactsFile = artifactsArtifact.getFile();
-            if ( !artifactsFile.exists() )
+            long tree = TimingReport.now();
+            Set<Artifact> dependencies = getDependencies();
+            report.phase( "tree", tree );
+            for ( final Artifact dependency : dependencies )
             {
-                throw new MojoExecutionException(
-                        "Could not find an artifact list for: " + dependency );
+                long lookup = TimingReport.now();
+                final File artifactsFile = findArtifactList( dependency,
+                        reactorProjects );
+                report.phase( "lookup", lookup );
+                if ( !artifactsFile.exists() )
+                {
+                    throw new MojoExecutionException(
+                            "Could not find an artifact list for: "
+                                    + dependency );
+                }
+                final Callable<List<String>> read = new Callable<List<String>>()
+                {
+                    @Override
+                    public List<String> call() throws MojoExecutionException
+                    {
+                        long start = TimingReport.now();
+                        try
+                        {
+                            List<String> chunk;
+                            if ( manifestTree )
+                            {
+                                chunk = Collections.singletonList( reference(
+                                        dependency, artifactsFile ) );
+                            }
+                            else
+                            {
+                                chunk = ArtifactListMerger.readSortedChunk(
+                                        artifactsFile, getLog() );
+                            }
+                            report.phase( "read", start, artifactsFile.length() );
+                            return chunk;
+                        }
+                        catch ( IOException ioe )
+                        {
+                            throw new MojoExecutionException(
+                                    "Could not read artifact list for: "
+                                            + dependency, ioe );
+                        }
+                    }
+                };
+                final String key = ( manifestTree ? "@" : "" )
+                                   + ArtifactListCache.key( dependency.getId(),
+                                           artifactsFile );
+                chunks.add( executor.submit( new Callable<List<String>>()
+                {
+                    @Override
+                    public List<String> call() throws MojoExecutionException
+                    {
+                        long start = TimingReport.now();
+                        try
+                        {
+                            return cache.get( key, read );
+                        }
+                        finally
+                        {
+                            report.artifact( start, artifactsFile.length() );
+                        }
+                    }
+                } ) );
             }
+            List<List<String>> sortedChunks = new ArrayList<List<String>>(
+                    chunks.size() );
+            for ( Future<List<String>> chunk : chunks )
+            {
+                sortedChunks.add( EaseHelper.await( chunk ) );
+            }
+            long merge = TimingReport.now();
+            aggregate = ArtifactListMerger.merge( sortedChunks );
+            report.phase( "merge", merge );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        long write = TimingReport.now();
+        EaseHelper.writeAndAttachArtifactList( aggregate, project,
+                projectHelper, getLog() );
+        if ( writeIndex )
+        {
+            EaseHelper.writeAndAttachArtifactIndex( aggregate, project,
+                    projectHelper, getLog() );
+        }
+        report.phase( "write", write );
+    }
 
-            String artifactList = null;
-            try
+    /**
+     * Finds the artifact list of a dependency. Lists of modules in the same
+     * reactor are taken from the module itself, so a parallel build never
+     * reads a list which the module is still installing, or a stale one.
+     */
+    private File findArtifactList( Artifact dependency,
+            Map<String, MavenProject> reactorProjects )
+    {
+        MavenProject reactorProject = reactorProjects.get( dependency.getGroupId()
+                + ':' + dependency.getArtifactId() + ':'
+                + dependency.getVersion() );
+        if ( reactorProject != null )
+        {
+            for ( Artifact attached : reactorProject.getAttachedArtifacts() )
             {
-                artifactList = FileUtils.fileRead( artifactsFile, "UTF-8" );
+                if ( "txt".equals( attached.getType() )
+                     && "artifacts".equals( attached.getClassifier() )
+                     && attached.getFile() != null )
+                {
+                    return attached.getFile();
+                }
             }
-            catch ( IOException ioe )
+            getLog().warn(
+                    "No artifact list attached to reactor module "
+                            + reactorProject.getId()
+                            + ", using the local repository." );
+        }
+        Artifact findArtifactsArtifact = artifactFactory.createArtifactWithClassifier(
+                dependency.getGroupId(), dependency.getArtifactId(),
+                dependency.getVersion(), "txt", "artifacts" );
+        return localRepository.find( findArtifactsArtifact )
+                .getFile();
+    }
+
+    private static String reference( Artifact dependency, File artifactsFile )
+            throws IOException, MojoExecutionException
+    {
+        Coordinates coordinates = new Coordinates( dependency.getGroupId(),
+                dependency.getArtifactId(), "txt", "artifacts",
+                dependency.getVersion() );
+        return new ArtifactListEntry( coordinates, artifactsFile.length(),
+                Checksums.checksum( artifactsFile, REFERENCE_CHECKSUM ),
+                true ).toString();
+    }
+
+    private Set<Artifact> getDependencies() throws MojoExecutionException
+    {
+        if ( !useCache )
+        {
+            return resolveDependencies();
+        }
+        File cacheFile = new File( project.getBuild()
+                .getDirectory(), "ease-aggregate-cache.txt" );
+        String key = cacheKey();
+        try
+        {
+            List<String> cached = DependencyCache.load( cacheFile, key );
+            if ( cached != null )
             {
-                throw new MojoExecutionException(
-                        "Could not read artifact list for: " + dependency, ioe );
+                getLog().info( "Using cached dependencies from: " + cacheFile );
+                Set<Artifact> artifacts = new HashSet<Artifact>();
+                CoordinatesPool pool = new CoordinatesPool();
+                for ( String line : cached )
+                {
+                    Coordinates coordinates = Coordinates.parse( line, pool );
+                    artifacts.add( artifactFactory.createArtifactWithClassifier(
+                            coordinates.getGroupId(),
+                            coordinates.getArtifactId(),
+                            coordinates.getVersion(), coordinates.getType(),
+                            null ) );
+                }
+                return artifacts;
             }
-            for ( String line : artifactList.split( "\n" ) )
+        }
+        catch ( IOException ioe )
+        {
+            getLog().warn( "Could not read dependency cache: " + cacheFile, ioe );
+        }
+
+        Set<Artifact> artifacts = resolveDependencies();
+        List<String> dependencies = new ArrayList<String>( artifacts.size() );
+        for ( Artifact artifact : artifacts )
+        {
+            dependencies.add( artifact.getGroupId() + ':'
+                              + artifact.getArtifactId() + ':'
+                              + artifact.getType() + ':'
+                              + artifact.getVersion() );
+        }
+        Collections.sort( dependencies );
+        try
+        {
+            DependencyCache.save( cacheFile, key, dependencies );
+        }
+        catch ( IOException ioe )
+        {
+            getLog().warn( "Could not write dependency cache: " + cacheFile,
+                    ioe );
+        }
+        return artifacts;
+    }
+
+    /**
+     * The cache key covers everything in this project deciding the dependency
+     * set: the effective dependency declarations, dependency management and
+     * the filter configuration.
+     */
+    private String cacheKey() throws MojoExecutionException
+    {
+        StringBuilder key = new StringBuilder( 1024 );
+        List<Dependency> dependencies = project.getDependencies();
+        for ( Dependency dependency : dependencies )
+        {
+            appendDependency( key, dependency );
+        }
+        DependencyManagement dependencyManagement = project.getDependencyManagement();
+        if ( dependencyManagement != null )
+        {
+            key.append( "managed\n" );
+            List<Dependency> managed = dependencyManagement.getDependencies();
+            for ( Dependency dependency : managed )
             {
-                aggregate.add( line );
+                appendDependency( key, dependency );
             }
         }
-        StringBuilder builder = new StringBuilder( aggregate.size() * 64 );
-        for ( String artifactLine : aggregate )
+        key.append( "includes=" )
+                .append( includes )
+                .append( "\nexcludes=" )
+                .append( excludes )
+                .append( "\nexcludeTransitive=" )
+                .append( excludeTransitive );
+        MessageDigest digest = Checksums.newDigest( "SHA-1" );
+        try
         {
-            builder.append( artifactLine )
-                    .append( '\n' );
+            digest.update( key.toString()
+                    .getBytes( "UTF-8" ) );
         }
-        EaseHelper.writeAndAttachArtifactList( builder, project, projectHelper,
-                getLog() );
+        catch ( UnsupportedEncodingException uee )
+        {
+            throw new MojoExecutionException( "UTF-8 is not supported.", uee );
+        }
+        return Checksums.hex( digest.digest() );
     }
 
-    private Set<Artifact> getDependencies() throws MojoExecutionException
+    private static void appendDependency( StringBuilder key,
+            Dependency dependency )
+    {
+        key.append( dependency.getManagementKey() )
+                .append( ':' )
+                .append( dependency.getVersion() )
+                .append( ':' )
+                .append( dependency.getScope() )
+                .append( ':' )
+                .append( dependency.isOptional() );
+        List<Exclusion> exclusions = dependency.getExclusions();
+        for ( Exclusion exclusion : exclusions )
+        {
+            key.append( ":!" )
+                    .append( exclusion.getGroupId() )
+                    .append( ':' )
+                    .append( exclusion.getArtifactId() );
+        }
+        key.append( '\n' );
+    }
+
+    private Set<Artifact> resolveDependencies() throws MojoExecutionException
     {
 
         AndArtifactFilter filters = new AndArtifactFilter();
@@ -209,7 +528,6 @@ public class AggregateMojo extends AbstractMojo
     private Set<Artifact> getFilteredTransitiveDependencies(
             ArtifactFilter filter ) throws MojoExecutionException
     {
-        HashSet<Artifact> artifacts = new HashSet<Artifact>();
         DependencyNode rootNode = null;
         try
         {
@@ -223,27 +541,11 @@ public class AggregateMojo extends AbstractMojo
                     "Failed to traverse dependencies.", dtbe );
         }
 
-        CollectingDependencyNodeVisitor visitor = new CollectingDependencyNodeVisitor();
-
-        /*
         // filter during dependency traversal
-        FilteringDependencyNodeVisitor filteringVisitor = new FilteringDependencyNodeVisitor( visitor,
-                new ArtifactDependencyNodeFilter( filter ) );
-
-        rootNode.accept( filteringVisitor );*/
-
+        FilteringCollector visitor = new FilteringCollector( filter );
         rootNode.accept( visitor );
 
-        List<DependencyNode> nodes = visitor.getNodes();
-        for ( DependencyNode dependencyNode : nodes )
-        {
-            int state = dependencyNode.getState();
-            if ( state == DependencyNode.INCLUDED
-                 && filter.include( dependencyNode.getArtifact() ) )
-            {
-                artifacts.add( dependencyNode.getArtifact() );
-            }
-        }
+        Set<Artifact> artifacts = visitor.artifacts;
         // remove this project, which is the root node of the tree
         artifacts.remove( project.getArtifact() );
         return artifacts;
@@ -262,4 +564,38 @@ public class AggregateMojo extends AbstractMojo
         }
         return artifacts;
     }
+
+    /**
+     * Collects the included artifacts while traversing the tree, instead of
+     * collecting all nodes first. Every node is still visited, as included
+     * artifacts can be found below excluded ones.
+     */
+    static class FilteringCollector implements DependencyNodeVisitor
+    {
+        final Set<Artifact> artifacts = new HashSet<Artifact>();
+
+        private final ArtifactFilter filter;
+
+        FilteringCollector( ArtifactFilter filter )
+        {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean visit( DependencyNode node )
+        {
+            if ( node.getState() == DependencyNode.INCLUDED
+                 && filter.include( node.getArtifact() ) )
+            {
+                artifacts.add( node.getArtifact() );
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endVisit( DependencyNode node )
+        {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Artifact lists as read by aggregate projects, shared by all aggregate
+ * executions in one build session. A nested aggregate which several
+ * aggregates depend on is then only read once per build.
+ * 
+ * Entries are keyed by the artifact coordinates and the size and
+ * modification time of the list file, so a list which is rewritten during the
+ * build is read again. The caches are held weakly by the execution request of
+ * the build, which the session clones of a parallel build share, and go away
+ * with it.
+ */
+final class ArtifactListCache
+{
+    private static final Map<MavenExecutionRequest, ArtifactListCache> SESSIONS = new WeakHashMap<MavenExecutionRequest, ArtifactListCache>();
+
+    private final ConcurrentMap<String, Future<List<String>>> lists = new ConcurrentHashMap<String, Future<List<String>>>();
+
+    private ArtifactListCache()
+    {
+    }
+
+    static ArtifactListCache forSession( MavenSession session )
+    {
+        synchronized ( SESSIONS )
+        {
+            ArtifactListCache cache = SESSIONS.get( session.getRequest() );
+            if ( cache == null )
+            {
+                cache = new ArtifactListCache();
+                SESSIONS.put( session.getRequest(), cache );
+            }
+            return cache;
+        }
+    }
+
+    static String key( String coordinates, File file )
+    {
+        return coordinates + ' ' + file.length() + ' ' + file.lastModified();
+    }
+
+    /**
+     * @return the cached list for the key, loading it first if needed.
+     *         Concurrent callers asking for the same key wait for one load.
+     */
+    List<String> get( String key, Callable<List<String>> loader )
+            throws MojoExecutionException
+    {
+        FutureTask<List<String>> load = new FutureTask<List<String>>( loader );
+        Future<List<String>> list = lists.putIfAbsent( key, load );
+        if ( list == null )
+        {
+            list = load;
+            load.run();
+        }
+        try
+        {
+            return Collections.unmodifiableList( EaseHelper.await( list ) );
+        }
+        catch ( MojoExecutionException mee )
+        {
+            lists.remove( key, list );
+            throw mee;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * One line of an artifact list: the artifact coordinates, optionally followed
+ * by the file size and a checksum of the file, separated by spaces.
+ * 
+ * <pre>
+ * groupId:artifactId:type[:classifier]:version [size algorithm:hex]
+ * </pre>
+ * 
+ * A line starting with @ is a reference to another artifact list, which is
+ * attached itself and read in place of the reference. References always
+ * carry the size and checksum of the list they point to.
+ */
+final class ArtifactListEntry
+{
+    static final long UNKNOWN_SIZE = -1;
+
+    private final Coordinates coordinates;
+
+    private final long size;
+
+    private final String checksum;
+
+    private final boolean reference;
+
+    ArtifactListEntry( Coordinates coordinates, long size, String checksum )
+    {
+        this( coordinates, size, checksum, false );
+    }
+
+    ArtifactListEntry( Coordinates coordinates, long size, String checksum,
+            boolean reference )
+    {
+        this.coordinates = coordinates;
+        this.size = size;
+        this.checksum = checksum;
+        this.reference = reference;
+    }
+
+    static ArtifactListEntry parse( String line, CoordinatesPool pool )
+            throws MojoExecutionException
+    {
+        line = line.trim();
+        boolean reference = line.startsWith( "@" );
+        int start = reference ? 1 : 0;
+        int end = start;
+        while ( end < line.length()
+                && !Character.isWhitespace( line.charAt( end ) ) )
+        {
+            end++;
+        }
+        Coordinates coordinates = Coordinates.parse( line, start, end, pool );
+        if ( end == line.length() )
+        {
+            if ( reference )
+            {
+                throw new MojoExecutionException(
+                        "Artifact list reference without checksum: " + line );
+            }
+            return new ArtifactListEntry( coordinates, UNKNOWN_SIZE, null );
+        }
+        String[] columns = line.substring( end )
+                .trim()
+                .split( "\\s+" );
+        if ( columns.length != 2 )
+        {
+            throw new MojoExecutionException( "Can not parse artifact list line: "
+                                              + line );
+        }
+        try
+        {
+            return new ArtifactListEntry( coordinates,
+                    Long.parseLong( columns[0] ), columns[1], reference );
+        }
+        catch ( NumberFormatException nfe )
+        {
+            throw new MojoExecutionException( "Can not parse artifact size: "
+                                              + line, nfe );
+        }
+    }
+
+    Coordinates getCoordinates()
+    {
+        return coordinates;
+    }
+
+    long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the checksum formatted as algorithm:hex, or null.
+     */
+    String getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * @return true if this entry points to another artifact list.
+     */
+    boolean isReference()
+    {
+        return reference;
+    }
+
+    @Override
+    public String toString()
+    {
+        if ( checksum == null )
+        {
+            return coordinates.toString();
+        }
+        StringBuilder builder = new StringBuilder( 128 );
+        if ( reference )
+        {
+            builder.append( '@' );
+        }
+        coordinates.appendTo( builder );
+        return builder.append( ' ' )
+                .append( size )
+                .append( ' ' )
+                .append( checksum )
+                .toString();
+    }
+}
@@ -0,0 +1,372 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Compact binary companion to the -artifacts.txt list, attached as the
+ * -artifacts.idx artifact. The text list stays the source of truth, the index
+ * only saves consumers from parsing every coordinate string again.
+ * 
+ * Layout: magic, format version, a string table holding every distinct
+ * coordinate part and checksum once as length prefixed UTF-8, the entries in
+ * list order as fixed width rows of string table references, flags and file
+ * size, and the entry positions in sorted order.
+ */
+final class ArtifactListIndex
+{
+    private static final int MAGIC = 0x45415345;
+
+    static final int VERSION = 4;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final int NO_STRING = -1;
+
+    private static final int GROUP_ID = 0;
+    private static final int ARTIFACT_ID = 1;
+    private static final int TYPE = 2;
+    private static final int CLASSIFIER = 3;
+    private static final int VERSION_ID = 4;
+    private static final int CHECKSUM = 5;
+    private static final int FLAGS = 6;
+    private static final int FIELDS = 7;
+
+    private static final int REFERENCE = 1;
+
+    private final String[] strings;
+
+    private final int[] entries;
+
+    private final long[] sizes;
+
+    private final int[] sorted;
+
+    private ArtifactListIndex( String[] strings, int[] entries, long[] sizes,
+            int[] sorted )
+    {
+        this.strings = strings;
+        this.entries = entries;
+        this.sizes = sizes;
+        this.sorted = sorted;
+    }
+
+    static File indexFileFor( File artifactList )
+    {
+        String name = artifactList.getName();
+        if ( name.endsWith( ".txt" ) )
+        {
+            name = name.substring( 0, name.length() - 4 );
+        }
+        return new File( artifactList.getParentFile(), name + ".idx" );
+    }
+
+    /**
+     * @return true if the index is written in the current format, indexes
+     *         written by older versions are not read.
+     */
+    static boolean isCurrent( File index ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new FileInputStream( index ) );
+        try
+        {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        }
+        catch ( EOFException eofe )
+        {
+            return false;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    int size()
+    {
+        return sorted.length;
+    }
+
+    /**
+     * @return the entry at the given position in list order.
+     */
+    ArtifactListEntry entry( int position )
+    {
+        int offset = position * FIELDS;
+        int classifier = entries[offset + CLASSIFIER];
+        int checksum = entries[offset + CHECKSUM];
+        Coordinates coordinates = new Coordinates(
+                strings[entries[offset + GROUP_ID]],
+                strings[entries[offset + ARTIFACT_ID]],
+                strings[entries[offset + TYPE]],
+                classifier == NO_STRING ? null : strings[classifier],
+                strings[entries[offset + VERSION_ID]] );
+        if ( checksum == NO_STRING )
+        {
+            return new ArtifactListEntry( coordinates,
+                    ArtifactListEntry.UNKNOWN_SIZE, null );
+        }
+        return new ArtifactListEntry( coordinates, sizes[position],
+                strings[checksum],
+                ( entries[offset + FLAGS] & REFERENCE ) != 0 );
+    }
+
+    /**
+     * @return a reader returning the entries in list order.
+     */
+    ArtifactListReader reader()
+    {
+        return new IndexReader( null );
+    }
+
+    /**
+     * @return a reader returning the entries in sorted order.
+     */
+    ArtifactListReader sortedReader()
+    {
+        return new IndexReader( sorted );
+    }
+
+    static void write( Collection<String> artifactList, OutputStream destination )
+            throws IOException, MojoExecutionException
+    {
+        final List<String> lines = new ArrayList<String>( artifactList );
+        CoordinatesPool pool = new CoordinatesPool();
+        Map<String, Integer> stringIds = new HashMap<String, Integer>();
+        List<String> strings = new ArrayList<String>();
+        int[] entries = new int[lines.size() * FIELDS];
+        long[] sizes = new long[lines.size()];
+        for ( int i = 0; i < lines.size(); i++ )
+        {
+            ArtifactListEntry entry = ArtifactListEntry.parse( lines.get( i ),
+                    pool );
+            Coordinates coordinates = entry.getCoordinates();
+            int offset = i * FIELDS;
+            entries[offset + GROUP_ID] = stringId( coordinates.getGroupId(),
+                    stringIds, strings );
+            entries[offset + ARTIFACT_ID] = stringId(
+                    coordinates.getArtifactId(), stringIds, strings );
+            entries[offset + TYPE] = stringId( coordinates.getType(),
+                    stringIds, strings );
+            entries[offset + CLASSIFIER] = stringId(
+                    coordinates.getClassifier(), stringIds, strings );
+            entries[offset + VERSION_ID] = stringId( coordinates.getVersion(),
+                    stringIds, strings );
+            entries[offset + CHECKSUM] = stringId( entry.getChecksum(),
+                    stringIds, strings );
+            entries[offset + FLAGS] = entry.isReference() ? REFERENCE : 0;
+            sizes[i] = entry.getSize();
+        }
+
+        List<Integer> order = new ArrayList<Integer>( lines.size() );
+        for ( int i = 0; i < lines.size(); i++ )
+        {
+            order.add( i );
+        }
+        Collections.sort( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer one, Integer other )
+            {
+                return lines.get( one )
+                        .compareTo( lines.get( other ) );
+            }
+        } );
+
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                destination ) );
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( strings.size() );
+            for ( String string : strings )
+            {
+                byte[] bytes = string.getBytes( UTF_8 );
+                out.writeInt( bytes.length );
+                out.write( bytes );
+            }
+            out.writeInt( lines.size() );
+            for ( int i = 0; i < lines.size(); i++ )
+            {
+                for ( int field = 0; field < FIELDS; field++ )
+                {
+                    out.writeInt( entries[i * FIELDS + field] );
+                }
+                out.writeLong( sizes[i] );
+            }
+            for ( int position : order )
+            {
+                out.writeInt( position );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads an index in one go and decodes it from memory.
+     */
+    static ArtifactListIndex read( File index ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( Files.readAllBytes( index.toPath() ) );
+        try
+        {
+            if ( buffer.getInt() != MAGIC )
+            {
+                throw new IOException( "Not an artifact list index: " + index );
+            }
+            int version = buffer.getInt();
+            if ( version != VERSION )
+            {
+                throw new IOException( "Unsupported artifact list index version "
+                                       + version + " in: " + index );
+            }
+            String[] strings = new String[buffer.getInt()];
+            for ( int i = 0; i < strings.length; i++ )
+            {
+                int length = buffer.getInt();
+                strings[i] = new String( buffer.array(), buffer.position(),
+                        length, UTF_8 );
+                buffer.position( buffer.position() + length );
+            }
+            int size = buffer.getInt();
+            int[] entries = new int[size * FIELDS];
+            long[] sizes = new long[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                for ( int field = 0; field < FIELDS; field++ )
+                {
+                    int value = buffer.getInt();
+                    if ( field != FLAGS
+                         && !isStringReference( field, value, strings.length ) )
+                    {
+                        throw new IOException( "Corrupt artifact list index: "
+                                               + index );
+                    }
+                    entries[i * FIELDS + field] = value;
+                }
+                sizes[i] = buffer.getLong();
+            }
+            int[] sorted = new int[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                sorted[i] = buffer.getInt();
+                if ( sorted[i] < 0 || sorted[i] >= size )
+                {
+                    throw new IOException( "Corrupt artifact list index: "
+                                           + index );
+                }
+            }
+            if ( buffer.hasRemaining() )
+            {
+                throw new IOException( "Corrupt artifact list index: " + index );
+            }
+            return new ArtifactListIndex( strings, entries, sizes, sorted );
+        }
+        catch ( RuntimeException re )
+        {
+            throw new IOException( "Corrupt artifact list index: " + index, re );
+        }
+    }
+
+    private static boolean isStringReference( int field, int value,
+            int strings )
+    {
+        if ( value == NO_STRING )
+        {
+            return field == CLASSIFIER || field == CHECKSUM;
+        }
+        return value >= 0 && value < strings;
+    }
+
+    private static int stringId( String string, Map<String, Integer> stringIds,
+            List<String> strings )
+    {
+        if ( string == null )
+        {
+            return NO_STRING;
+        }
+        Integer id = stringIds.get( string );
+        if ( id == null )
+        {
+            id = strings.size();
+            strings.add( string );
+            stringIds.put( string, id );
+        }
+        return id;
+    }
+
+    private class IndexReader extends ArtifactListReader
+    {
+        private final int[] order;
+
+        private int next = 0;
+
+        IndexReader( int[] order )
+        {
+            this.order = order;
+        }
+
+        @Override
+        String next()
+        {
+            ArtifactListEntry entry = nextEntry();
+            return entry == null ? null : entry.toString();
+        }
+
+        @Override
+        ArtifactListEntry nextEntry()
+        {
+            if ( next == size() )
+            {
+                return null;
+            }
+            int position = next++;
+            return entry( order == null ? position : order[position] );
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Merges artifact lists into a single sorted list without duplicates. Each
+ * list is first read into a sorted chunk, which can be done concurrently,
+ * and the chunks are then combined in a single k-way merge.
+ */
+final class ArtifactListMerger
+{
+    private ArtifactListMerger()
+    {
+    }
+
+    /**
+     * @return the lines of the artifact list, sorted and without duplicates.
+     */
+    static List<String> readSortedChunk( File artifactList, Log log )
+            throws IOException
+    {
+        List<String> chunk = new ArrayList<String>();
+        ArtifactListReader reader = ArtifactListReader.openSorted(
+                artifactList, log );
+        try
+        {
+            String line;
+            String previous = null;
+            while ( ( line = reader.next() ) != null )
+            {
+                if ( !line.equals( previous ) )
+                {
+                    chunk.add( line );
+                    previous = line;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return chunk;
+    }
+
+    /**
+     * Merges sorted chunks into one sorted list, dropping duplicates.
+     */
+    static List<String> merge( List<List<String>> chunks )
+    {
+        int total = 0;
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(
+                Math.max( 1, chunks.size() ) );
+        for ( List<String> chunk : chunks )
+        {
+            total += chunk.size();
+            if ( !chunk.isEmpty() )
+            {
+                queue.add( new Cursor( chunk ) );
+            }
+        }
+        List<String> merged = new ArrayList<String>( total );
+        String previous = null;
+        while ( !queue.isEmpty() )
+        {
+            Cursor cursor = queue.poll();
+            String line = cursor.current();
+            if ( !line.equals( previous ) )
+            {
+                merged.add( line );
+                previous = line;
+            }
+            if ( cursor.advance() )
+            {
+                queue.add( cursor );
+            }
+        }
+        return merged;
+    }
+
+    private static class Cursor implements Comparable<Cursor>
+    {
+        private final List<String> chunk;
+
+        private int position = 0;
+
+        Cursor( List<String> chunk )
+        {
+            this.chunk = chunk;
+        }
+
+        String current()
+        {
+            return chunk.get( position );
+        }
+
+        boolean advance()
+        {
+            return ++position < chunk.size();
+        }
+
+        @Override
+        public int compareTo( Cursor other )
+        {
+            return current().compareTo( other.current() );
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Reads the coordinates in an artifact list one entry at a time, so the whole
+ * list never has to be held in memory.
+ */
+abstract class ArtifactListReader implements Closeable
+{
+    /**
+     * @return the next coordinates in the list, or null at the end of the list.
+     */
+    abstract String next() throws IOException;
+
+    private final CoordinatesPool pool = new CoordinatesPool();
+
+    /**
+     * @return the next entry in the list, or null at the end of the list.
+     */
+    ArtifactListEntry nextEntry() throws IOException, MojoExecutionException
+    {
+        String line = next();
+        return line == null ? null : ArtifactListEntry.parse( line, pool );
+    }
+
+    /**
+     * Opens an artifact list, preferring its binary index if there is one
+     * which is at least as recent as the list itself and written in the
+     * current index format. An index which can not be read is skipped with a
+     * warning, the text list being the source of truth.
+     */
+    static ArtifactListReader open( File artifactList, Log log )
+            throws IOException
+    {
+        ArtifactListIndex index = readIndex( artifactList, log );
+        if ( index != null )
+        {
+            return index.reader();
+        }
+        return new TextReader( artifactList );
+    }
+
+    /**
+     * @return the index of the list, or null if there is no usable one.
+     */
+    private static ArtifactListIndex readIndex( File artifactList, Log log )
+    {
+        File index = ArtifactListIndex.indexFileFor( artifactList );
+        try
+        {
+            if ( index.isFile()
+                 && index.lastModified() >= artifactList.lastModified()
+                 && ArtifactListIndex.isCurrent( index ) )
+            {
+                return ArtifactListIndex.read( index );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Could not read artifact list index, using the text list instead: "
+                      + index, ioe );
+        }
+        return null;
+    }
+
+    /**
+     * Opens the text format of an artifact list, ignoring any index next to
+     * it.
+     */
+    static ArtifactListReader openText( File artifactList ) throws IOException
+    {
+        return new TextReader( artifactList );
+    }
+
+    /**
+     * Opens an artifact list for reading in sorted order. Only an index
+     * comes sorted already, text lists have to be read fully and sorted.
+     */
+    static ArtifactListReader openSorted( File artifactList, Log log )
+            throws IOException
+    {
+        ArtifactListIndex index = readIndex( artifactList, log );
+        if ( index != null )
+        {
+            return index.sortedReader();
+        }
+        List<String> lines = new ArrayList<String>();
+        ArtifactListReader reader = new TextReader( artifactList );
+        try
+        {
+            String line;
+            while ( ( line = reader.next() ) != null )
+            {
+                lines.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        Collections.sort( lines );
+        return new ListReader( lines );
+    }
+
+    private static class ListReader extends ArtifactListReader
+    {
+        private final Iterator<String> lines;
+
+        ListReader( List<String> lines )
+        {
+            this.lines = lines.iterator();
+        }
+
+        @Override
+        String next()
+        {
+            return lines.hasNext() ? lines.next() : null;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * Reads the text format. Blank lines and lines starting with # are
+     * skipped, and both LF and CRLF line endings are accepted.
+     */
+    private static class TextReader extends ArtifactListReader
+    {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final BufferedReader reader;
+
+        TextReader( File file ) throws IOException
+        {
+            FileChannel channel = FileChannel.open( file.toPath(),
+                    StandardOpenOption.READ );
+            reader = new BufferedReader( Channels.newReader( channel,
+                    Charset.forName( "UTF-8" )
+                            .newDecoder(), -1 ), BUFFER_SIZE );
+        }
+
+        @Override
+        String next() throws IOException
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                line = line.trim();
+                if ( line.length() > 0 && line.charAt( 0 ) != '#' )
+                {
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            reader.close();
+        }
+    }
+}
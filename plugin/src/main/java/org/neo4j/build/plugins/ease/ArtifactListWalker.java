@@ -0,0 +1,146 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Walks an artifact list and the lists it references, depth first. The
+ * caller resolves a reference and opens the list it points to with
+ * {@link #push(File, boolean)}, which is then read in place of the
+ * reference. Coordinates seen before are skipped, which removes artifacts
+ * shared between referenced lists and stops reference cycles.
+ */
+final class ArtifactListWalker
+{
+    private final Deque<OpenList> lists = new ArrayDeque<OpenList>();
+
+    private final Set<Coordinates> seen = new HashSet<Coordinates>();
+
+    private final Log log;
+
+    ArtifactListWalker( File artifactList, Log log )
+            throws MojoExecutionException
+    {
+        this.log = log;
+        push( artifactList, false );
+    }
+
+    /**
+     * @return the next entry not seen before, or null when all lists are
+     *         read.
+     */
+    ArtifactListEntry next() throws MojoExecutionException
+    {
+        while ( !lists.isEmpty() )
+        {
+            ArtifactListEntry entry = lists.peek()
+                    .nextEntry();
+            if ( entry == null )
+            {
+                lists.pop()
+                        .close();
+            }
+            else if ( seen.add( entry.getCoordinates() ) )
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a list before the rest of the current one.
+     * 
+     * @param asText ignore any index next to the list, for a list which has
+     *            been verified as text.
+     */
+    void push( File file, boolean asText ) throws MojoExecutionException
+    {
+        try
+        {
+            lists.push( new OpenList( file,
+                    asText ? ArtifactListReader.openText( file )
+                            : ArtifactListReader.open( file, log ) ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException(
+                    "Could not read artifact list from: " + file, ioe );
+        }
+    }
+
+    void close()
+    {
+        while ( !lists.isEmpty() )
+        {
+            lists.pop()
+                    .close();
+        }
+    }
+
+    /**
+     * An artifact list being read, remembering its file for error messages.
+     */
+    private class OpenList
+    {
+        private final File file;
+
+        private final ArtifactListReader reader;
+
+        OpenList( File file, ArtifactListReader reader )
+        {
+            this.file = file;
+            this.reader = reader;
+        }
+
+        ArtifactListEntry nextEntry() throws MojoExecutionException
+        {
+            try
+            {
+                return reader.nextEntry();
+            }
+            catch ( IOException ioe )
+            {
+                throw new MojoExecutionException(
+                        "Could not read artifact list from: " + file, ioe );
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                reader.close();
+            }
+            catch ( IOException ioe )
+            {
+                log.warn( "Could not close artifact list: " + file, ioe );
+            }
+        }
+    }
+}
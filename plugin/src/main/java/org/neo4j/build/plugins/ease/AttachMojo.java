@@ -21,6 +21,13 @@ package org.neo4j.build.plugins.ease;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -44,7 +51,9 @@ import org.codehaus.plexus.util.FileUtils;
 public class AttachMojo extends AbstractMojo
 {
     /**
-     * File system location of artifact list.
+     * File system location of artifact list. A binary -artifacts.idx index
+     * next to the list is used instead of it when present. Lists referenced
+     * from the list are looked up in the artifact repository.
      * 
      * @parameter expression="${artifactListLocation}"
      * @required
@@ -56,10 +65,74 @@ public class AttachMojo extends AbstractMojo
      * is not allowed to point artifactRepositoryLocation to the location of the
      * local repository.
      * 
+     * It can also point to a zip bundle written by the export goal. Artifacts
+     * are then extracted one by one into the build directory, whatever the
+     * staging mode, without extracting the whole bundle first.
+     * 
      * @parameter expression="${artifactRepositoryLocation}"
      */
     private String artifactRepositoryLocation;
 
+    /**
+     * Number of threads used to resolve and copy artifacts into the build
+     * directory. The artifacts are still attached to the project in the order
+     * of the artifact list.
+     * 
+     * @parameter expression="${attachThreads}" default-value="1"
+     */
+    private int attachThreads;
+
+    /**
+     * How to stage artifacts in the build directory: copy, hardlink, symlink
+     * or none. Using none attaches the files in place in the artifact
+     * repository. When a link can not be created, the file is copied instead.
+     * 
+     * @parameter expression="${stagingMode}" default-value="copy"
+     */
+    private String stagingMode;
+
+    /**
+     * Verify artifact files against the size and checksum recorded in the
+     * artifact list, when the list has them.
+     * 
+     * @parameter expression="${verifyChecksums}" default-value="true"
+     */
+    private boolean verifyChecksums;
+
+    /**
+     * Keep an index of staged copies in the build directory, so unchanged
+     * files are not copied again even when their modification times changed.
+     * Only used when staging copies.
+     * 
+     * @parameter expression="${stagingIndex}" default-value="true"
+     */
+    private boolean useStagingIndex;
+
+    /**
+     * Record every staged artifact in a journal in the build directory, so an
+     * interrupted run can be resumed. Always on when resuming.
+     * 
+     * @parameter expression="${ease.journal}" default-value="false"
+     */
+    private boolean useJournal;
+
+    /**
+     * Resume an interrupted run, skipping the artifacts its journal records as
+     * staged when the staged file still matches.
+     * 
+     * @parameter expression="${ease.resume}" default-value="false"
+     */
+    private boolean resume;
+
+    /**
+     * Write a JSON report of the time spent reading lists, looking up,
+     * verifying and staging artifacts, with the per artifact latency, to
+     * ease-attach-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    private boolean writeReport;
+
     /**
      * @parameter default-value="${project}"
      * @required
@@ -90,46 +163,224 @@ public class AttachMojo extends AbstractMojo
      */
     private ArtifactRepository artifactRepository = null;
 
+    private BundleRepository bundle = null;
+
+    private StagingMode staging = null;
+
+    private StagingIndex stagingIndex = null;
+
+    private Journal journal = null;
+
+    private TimingReport report = null;
+
     @Override
     public void execute() throws MojoExecutionException
     {
         project.getAttachedArtifacts()
                 .clear();
+        report = new TimingReport( "attach", project.getId() );
 
-        String[] lines = null;
-        try
+        staging = StagingMode.fromString( stagingMode, getLog() );
+        String buildDir = project.getBuild()
+                .getDirectory();
+        if ( !FileUtils.fileExists( buildDir ) )
         {
-            lines = FileUtils.fileRead( artifactListLocation, "UTF-8" )
-                    .split( "\n" );
+            FileUtils.mkdir( buildDir );
         }
-        catch ( IOException ioe )
+        long setup = TimingReport.now();
+        String source;
+        if ( artifactRepositoryLocation != null
+             && BundleRepository.isBundle( FileUtils.getFile( artifactRepositoryLocation ) ) )
         {
-            throw new MojoExecutionException(
-                    "Could not read artifact list from: "
-                            + artifactListLocation );
+            bundle = BundleRepository.open( FileUtils.getFile( artifactRepositoryLocation ) );
+            source = FileUtils.getFile( artifactRepositoryLocation )
+                    .getAbsolutePath();
+            getLog().info( "Loading artifacts from bundle at: " + source );
         }
+        else
+        {
+            if ( useStagingIndex && staging.isCopy() )
+            {
+                stagingIndex = loadStagingIndex( buildDir );
+            }
+            artifactRepository = setupArtifactRepository( localRepository,
+                    artifactRepositoryLocation );
+            source = artifactRepository.getBasedir() + " staging " + staging;
+            getLog().info(
+                    "Loading artifacts from repository at: "
+                            + artifactRepository.getBasedir() );
+        }
+        if ( useJournal || resume )
+        {
+            journal = EaseHelper.openJournal( new File( buildDir,
+                    "ease-attach.journal" ), "attach from " + source, resume,
+                    getLog() );
+        }
+        report.phase( "setup", setup );
 
-        artifactRepository = setupArtifactRepository( localRepository,
-                artifactRepositoryLocation );
+        List<Future<Artifact>> stagedArtifacts = new ArrayList<Future<Artifact>>();
+        ExecutorService executor = EaseHelper.newExecutor( attachThreads );
+        ArtifactListWalker lists = new ArtifactListWalker(
+                FileUtils.getFile( artifactListLocation ), getLog() );
+        try
+        {
+            ArtifactListEntry nextEntry;
+            while ( ( nextEntry = next( lists ) ) != null )
+            {
+                final ArtifactListEntry entry = nextEntry;
+                final Artifact findArtifact = createArtifact( entry.getCoordinates() );
+                if ( findArtifact == null )
+                {
+                    throw new MojoExecutionException(
+                            "Could not create artifact from coordinates: "
+                                    + entry.getCoordinates() );
+                }
+                if ( entry.isReference() )
+                {
+                    expandReference( findArtifact, entry, lists, executor,
+                            stagedArtifacts );
+                    continue;
+                }
+                stagedArtifacts.add( executor.submit( new Callable<Artifact>()
+                {
+                    @Override
+                    public Artifact call() throws MojoExecutionException
+                    {
+                        long start = TimingReport.now();
+                        Artifact staged = bundle != null ? extractBundledArtifact(
+                                findArtifact, entry )
+                                : findAndStageExternalArtifact( findArtifact,
+                                        entry );
+                        report.artifact( start, staged.getFile()
+                                .length() );
+                        return staged;
+                    }
+                } ) );
+            }
+            for ( Future<Artifact> stagedArtifact : stagedArtifacts )
+            {
+                Artifact artifactToAttach = EaseHelper.await( stagedArtifact );
+                project.addAttachedArtifact( artifactToAttach );
+                getLog().info( "Attached: " + artifactToAttach );
+            }
+            if ( stagingIndex != null )
+            {
+                saveStagingIndex();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            lists.close();
+            if ( journal != null )
+            {
+                EaseHelper.closeJournal( journal, getLog() );
+            }
+            if ( bundle != null )
+            {
+                EaseHelper.closeBundle( bundle, getLog() );
+            }
+            if ( writeReport )
+            {
+                report.write( buildDir, getLog() );
+            }
+        }
+    }
 
-        getLog().info(
-                "Loading artifacts from repository at: "
-                        + artifactRepository.getBasedir() );
+    private ArtifactListEntry next( ArtifactListWalker lists )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        try
+        {
+            return lists.next();
+        }
+        finally
+        {
+            report.phase( "list", start );
+        }
+    }
 
-        for ( String artifactString : lines )
+    /**
+     * Attaches the artifact list a reference points to, and opens it to be
+     * read in place of the reference. A verified list is read as text, so
+     * what is read is what was verified.
+     */
+    private void expandReference( Artifact findArtifact,
+            ArtifactListEntry reference, ArtifactListWalker lists,
+            ExecutorService executor, List<Future<Artifact>> stagedArtifacts )
+            throws MojoExecutionException
+    {
+        final Artifact list;
+        if ( bundle != null )
         {
-            Artifact findArtifact = createArtifact( artifactString );
-            if ( findArtifact == null )
+            list = findArtifact;
+            list.setFile( extract( lookupBundled( findArtifact ),
+                    EaseHelper.stagedFile( project.getBuild()
+                            .getDirectory(), findArtifact ) ) );
+        }
+        else
+        {
+            list = lookup( findArtifact );
+        }
+        File file = list.getFile();
+        final String verifiedChecksum;
+        if ( verifyChecksums )
+        {
+            verify( file, reference );
+            verifiedChecksum = reference.getChecksum();
+        }
+        else
+        {
+            verifiedChecksum = null;
+        }
+        final String key = reference.getCoordinates()
+                .toString();
+        stagedArtifacts.add( executor.submit( new Callable<Artifact>()
+        {
+            @Override
+            public Artifact call() throws MojoExecutionException
             {
-                throw new MojoExecutionException(
-                        "Could not create artifact from coordinates: "
-                                + artifactString );
+                if ( bundle != null )
+                {
+                    return list;
+                }
+                return stageExternalArtifact( list, key, verifiedChecksum );
             }
-            findAndAttachExternalArtifact( findArtifact, artifactRepository );
+        } ) );
+        getLog().info( "Reading referenced artifact list: " + file );
+        lists.push( file, verifiedChecksum != null );
+    }
+
+    private static StagingIndex loadStagingIndex( String buildDir )
+            throws MojoExecutionException
+    {
+        File indexFile = new File( buildDir, "ease-staging.properties" );
+        try
+        {
+            return StagingIndex.load( indexFile );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not read staging index: "
+                                              + indexFile, ioe );
         }
     }
 
-    private static ArtifactRepository setupArtifactRepository(
+    private void saveStagingIndex() throws MojoExecutionException
+    {
+        try
+        {
+            stagingIndex.save();
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not write staging index.",
+                    ioe );
+        }
+    }
+
+    static ArtifactRepository setupArtifactRepository(
             ArtifactRepository localRepo, String separateRepoLocation )
             throws MojoExecutionException
     {
@@ -181,7 +432,168 @@ public class AttachMojo extends AbstractMojo
         }
     }
 
-    private void findAndAttachExternalArtifact( Artifact findArtifact,
+    private Artifact findAndStageExternalArtifact( Artifact findArtifact,
+            ArtifactListEntry entry ) throws MojoExecutionException
+    {
+        Artifact artifactToAttach = lookup( findArtifact );
+        String key = entry.getCoordinates()
+                .toString();
+        File staged = stagedFile( artifactToAttach );
+        if ( journal != null && isCompleted( key, entry, staged ) )
+        {
+            artifactToAttach.setFile( staged );
+            return artifactToAttach;
+        }
+        String verifiedChecksum = null;
+        if ( verifyChecksums && entry.getChecksum() != null )
+        {
+            verify( artifactToAttach.getFile(), entry );
+            verifiedChecksum = entry.getChecksum();
+        }
+        long start = TimingReport.now();
+        stageExternalArtifact( artifactToAttach, key, verifiedChecksum );
+        report.phase( "stage", start, artifactToAttach.getFile()
+                .length() );
+        record( key, entry, staged );
+        return artifactToAttach;
+    }
+
+    /**
+     * Extracts an artifact from the bundle into the build directory, and
+     * verifies the extracted file.
+     */
+    private Artifact extractBundledArtifact( Artifact artifact,
+            ArtifactListEntry entry ) throws MojoExecutionException
+    {
+        Path source = lookupBundled( artifact );
+        String key = entry.getCoordinates()
+                .toString();
+        File staged = EaseHelper.stagedFile( project.getBuild()
+                .getDirectory(), artifact );
+        if ( journal == null || !isCompleted( key, entry, staged ) )
+        {
+            extract( source, staged );
+            if ( verifyChecksums && entry.getChecksum() != null )
+            {
+                verify( staged, entry );
+            }
+            record( key, entry, staged );
+        }
+        artifact.setFile( staged );
+        return artifact;
+    }
+
+    private Artifact lookup( Artifact findArtifact )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        try
+        {
+            return findExternalArtifact( findArtifact, artifactRepository );
+        }
+        finally
+        {
+            report.phase( "lookup", start );
+        }
+    }
+
+    private Path lookupBundled( Artifact findArtifact )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        try
+        {
+            return bundle.find( findArtifact );
+        }
+        finally
+        {
+            report.phase( "lookup", start );
+        }
+    }
+
+    private File extract( Path source, File destination )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        File extracted = bundle.extract( source, destination );
+        report.phase( "stage", start, extracted.length() );
+        return extracted;
+    }
+
+    private void verify( File file, ArtifactListEntry entry )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        verifyChecksum( file, entry );
+        report.phase( "verify", start, entry.getSize() );
+    }
+
+    private void record( String key, ArtifactListEntry entry, File staged )
+            throws MojoExecutionException
+    {
+        if ( journal == null )
+        {
+            return;
+        }
+        try
+        {
+            journal.record( key, journalHash( entry, staged ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException(
+                    "Could not write to the journal.", ioe );
+        }
+    }
+
+    private File stagedFile( Artifact artifact )
+    {
+        if ( staging == StagingMode.NONE )
+        {
+            return artifact.getFile();
+        }
+        return EaseHelper.stagedFile( project.getBuild()
+                .getDirectory(), artifact );
+    }
+
+    /**
+     * An artifact was completed by an earlier run if the journal holds it with
+     * the same checksum as the list, or without one in the list, with the
+     * checksum of the staged file.
+     */
+    private boolean isCompleted( String key, ArtifactListEntry entry,
+            File staged ) throws MojoExecutionException
+    {
+        if ( !staged.isFile() )
+        {
+            return false;
+        }
+        if ( entry.getChecksum() != null
+             && staged.length() != entry.getSize() )
+        {
+            return false;
+        }
+        long start = TimingReport.now();
+        boolean completed = journal.isCompleted( key, journalHash( entry,
+                staged ) );
+        report.phase( "journal", start );
+        return completed;
+    }
+
+    /**
+     * The checksum from the list, or without one, the size and modification
+     * time of the staged file, so the journal never reads the file again.
+     */
+    private static String journalHash( ArtifactListEntry entry, File staged )
+    {
+        if ( entry.getChecksum() != null )
+        {
+            return entry.getChecksum();
+        }
+        return "stat:" + staged.length() + ":" + staged.lastModified();
+    }
+
+    static Artifact findExternalArtifact( Artifact findArtifact,
             ArtifactRepository repository ) throws MojoExecutionException
     {
         Artifact artifactToAttach = repository.find( findArtifact );
@@ -191,57 +603,66 @@ public class AttachMojo extends AbstractMojo
             throw new MojoExecutionException( "Missing artifact file: "
                                               + findArtifact.getFile() );
         }
+        return artifactToAttach;
+    }
 
+    private Artifact stageExternalArtifact( Artifact artifactToAttach,
+            String key, String verifiedChecksum ) throws MojoExecutionException
+    {
         String fileName = artifactToAttach.getFile()
                 .getName();
-        File destination = new File( new File( project.getBuild()
-                .getDirectory() ), fileName );
+        File destination = EaseHelper.stagedFile( project.getBuild()
+                .getDirectory(), artifactToAttach );
         try
         {
-            FileUtils.copyFileIfModified( artifactToAttach.getFile(),
-                    destination );
+            Files.createDirectories( destination.getParentFile()
+                    .toPath() );
+            if ( stagingIndex != null )
+            {
+                stagingIndex.stage( key, artifactToAttach.getFile(),
+                        destination, verifiedChecksum );
+                artifactToAttach.setFile( destination );
+            }
+            else
+            {
+                artifactToAttach.setFile( staging.stage(
+                        artifactToAttach.getFile(), destination ) );
+            }
         }
         catch ( IOException ioe )
         {
-            throw new MojoExecutionException( "Could not copy file: "
+            throw new MojoExecutionException( "Could not stage file: "
                                               + fileName, ioe );
         }
-        artifactToAttach.setFile( destination );
-
-        project.addAttachedArtifact( artifactToAttach );
-        getLog().info( "Attached: " + artifactToAttach );
-    }
-
-    private Artifact createArtifact( String groupId, String artifactId,
-            String version, String type, String classifier )
-    {
-        return artifactFactory.createArtifactWithClassifier( groupId,
-                artifactId, version, type, classifier );
+        return artifactToAttach;
     }
 
-    private Artifact createArtifact( String coords )
+    static void verifyChecksum( File file, ArtifactListEntry entry )
             throws MojoExecutionException
     {
-        String[] strings = coords.split( ":" );
-        if ( strings.length < 4 || strings.length > 5 )
+        boolean matches;
+        try
         {
-            throw new MojoExecutionException( "Can not parse coordinates: "
-                                              + coords );
+            matches = file.length() == entry.getSize()
+                      && Checksums.matches( file, entry.getChecksum() );
         }
-        String groupId = strings[0];
-        String artifactId = strings[1];
-        String type = strings[2];
-        String version = null;
-        String classifier = null;
-        if ( strings.length == 5 )
+        catch ( IOException ioe )
         {
-            version = strings[4];
-            classifier = strings[3];
+            throw new MojoExecutionException( "Could not read file: " + file,
+                    ioe );
         }
-        else if ( strings.length == 4 )
+        if ( !matches )
         {
-            version = strings[3];
+            throw new MojoExecutionException(
+                    "Artifact file does not match the artifact list: " + file );
         }
-        return createArtifact( groupId, artifactId, version, type, classifier );
+    }
+
+    private Artifact createArtifact( Coordinates coordinates )
+    {
+        return artifactFactory.createArtifactWithClassifier(
+                coordinates.getGroupId(), coordinates.getArtifactId(),
+                coordinates.getVersion(), coordinates.getType(),
+                coordinates.getClassifier() );
     }
 }
@@ -19,21 +19,32 @@
 package org.neo4j.build.plugins.ease;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
+import org.bouncycastle.openpgp.PGPException;
 import org.codehaus.plexus.util.FileUtils;
 
 /**
  * Attaches all signatures of signed artifacts to the project. Will fail on
- * missing signatures.
+ * missing signatures, reporting all of them at once, unless configured to
+ * sign them in process. Optionally verifies the signatures against a public
+ * keyring.
  * 
  * @goal attachsignatures
  * @requiresProject true
@@ -58,15 +69,96 @@ public class AttachSignaturesMojo extends AbstractMojo
      */
     protected ArtifactFactory artifactFactory;
 
-    private final Set<String> attachedIds = new HashSet<String>();
+    /**
+     * Number of threads used to check and verify signatures, 0 means one
+     * thread per processor.
+     * 
+     * @parameter expression="${signatureThreads}" default-value="0"
+     */
+    private int signatureThreads;
+
+    /**
+     * Public keyring file to verify the signatures against. Signatures are
+     * only checked for existence when not set.
+     * 
+     * @parameter expression="${publicKeyring}"
+     */
+    private File publicKeyring;
+
+    /**
+     * Sign artifacts lacking a signature in process, instead of failing the
+     * build. Requires a secretKeyring.
+     * 
+     * @parameter expression="${signMissing}" default-value="false"
+     */
+    private boolean signMissing;
+
+    /**
+     * Secret keyring file with the key to sign missing signatures with.
+     * 
+     * @parameter expression="${secretKeyring}"
+     */
+    private File secretKeyring;
+
+    /**
+     * Key id, or part of a user id, of the key to sign with. The first
+     * signing key of the secret keyring is used when not set.
+     * 
+     * @parameter expression="${gpg.keyname}"
+     */
+    private String keyname;
+
+    /**
+     * Passphrase of the signing key.
+     * 
+     * @parameter expression="${gpg.passphrase}"
+     */
+    private String passphrase;
+
+    /**
+     * Write a JSON report of the time spent checking, signing and verifying
+     * signatures, with the latency per artifact, to
+     * ease-attachsignatures-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    private boolean writeReport;
+
+    /**
+     * The artifacts to attach by id, so duplicates are dropped.
+     */
+    private final Map<String, Artifact> attachments = new HashMap<String, Artifact>();
+
+    private final DirectoryIndex signatureIndex = new DirectoryIndex();
+
+    private TimingReport report = null;
 
     @Override
     public void execute() throws MojoExecutionException
+    {
+        report = new TimingReport( "attachsignatures", project.getId() );
+        try
+        {
+            attachSignatures();
+        }
+        finally
+        {
+            if ( writeReport )
+            {
+                report.write( project.getBuild()
+                        .getDirectory(), getLog() );
+            }
+        }
+    }
+
+    private void attachSignatures() throws MojoExecutionException
     {
         List<Artifact> artifacts = new ArrayList<Artifact>(
                 project.getAttachedArtifacts() );
-        project.getAttachedArtifacts()
-                .clear();
+
+        // decide what to attach, and which artifacts need a signature
+        List<Artifact> toAttach = new ArrayList<Artifact>( artifacts.size() );
+        List<Artifact> toSign = new ArrayList<Artifact>( artifacts.size() );
         for ( Artifact artifact : artifacts )
         {
             String type = artifact.getType();
@@ -77,52 +169,254 @@ public class AttachSignaturesMojo extends AbstractMojo
                 // only add back the project artifacts we want
                 if ( type.equals( "pom.asc" ) || type.equals( "pom" ) )
                 {
-                    attach( artifact );
+                    toAttach.add( artifact );
                 }
             }
             else
             {
                 // re-attach and check if there's a signature to attach as well
-                attach( artifact );
+                toAttach.add( artifact );
                 if ( !type.endsWith( ".asc" ) )
                 {
-                    File artifactFile = artifact.getFile();
-                    String signaturePath = artifactFile.getAbsolutePath()
-                                           + ".asc";
-                    File signatureFile = FileUtils.getFile( signaturePath );
-                    if ( signatureFile.exists() )
+                    toSign.add( artifact );
+                }
+            }
+        }
+
+        checkSignatures( toSign );
+
+        long attach = TimingReport.now();
+        Set<Artifact> signed = Collections.newSetFromMap( new IdentityHashMap<Artifact, Boolean>() );
+        signed.addAll( toSign );
+        for ( Artifact artifact : toAttach )
+        {
+            attach( artifact );
+            if ( signed.contains( artifact ) )
+            {
+                String classifier = null;
+                if ( artifact.hasClassifier() )
+                {
+                    classifier = artifact.getClassifier();
+                }
+                Artifact signatureArtifact = artifactFactory.createArtifactWithClassifier(
+                        artifact.getGroupId(), artifact.getArtifactId(),
+                        artifact.getVersion(), artifact.getType() + ".asc",
+                        classifier );
+                signatureArtifact.setFile( signatureFile( artifact ) );
+                attach( signatureArtifact );
+            }
+        }
+
+        // replace the attached artifacts in one step, in canonical order
+        List<Artifact> attached = new ArrayList<Artifact>(
+                attachments.values() );
+        Collections.sort( attached, CANONICAL_ORDER );
+        List<Artifact> projectAttachments = project.getAttachedArtifacts();
+        projectAttachments.clear();
+        projectAttachments.addAll( attached );
+        report.phase( "attach", attach );
+        for ( Artifact artifact : attached )
+        {
+            getLog().info( "Attached: " + artifact.getId() );
+        }
+    }
+
+    /**
+     * Checks all signatures up front, so every missing or invalid signature
+     * is reported at once.
+     */
+    private void checkSignatures( List<Artifact> toSign )
+            throws MojoExecutionException
+    {
+        long keys = TimingReport.now();
+        final PgpSignatures signatures = loadPublicKeyring();
+        final PgpSigner signer = loadSigner();
+        report.phase( "keys", keys );
+        List<Future<String>> checks = new ArrayList<Future<String>>(
+                toSign.size() );
+        ExecutorService executor = EaseHelper.newExecutor( signatureThreads );
+        try
+        {
+            for ( final Artifact artifact : toSign )
+            {
+                checks.add( executor.submit( new Callable<String>()
+                {
+                    @Override
+                    public String call() throws IOException, PGPException
                     {
-                        String classifier = null;
-                        if ( artifact.hasClassifier() )
+                        long start = TimingReport.now();
+                        try
                         {
-                            classifier = artifact.getClassifier();
+                            return checkSignature( artifact, signatures, signer );
+                        }
+                        finally
+                        {
+                            report.artifact( start, artifact.getFile()
+                                    .length() );
                         }
-                        Artifact signatureArtifact = artifactFactory.createArtifactWithClassifier(
-                                artifact.getGroupId(),
-                                artifact.getArtifactId(),
-                                artifact.getVersion(), type + ".asc",
-                                classifier );
-                        signatureArtifact.setFile( signatureFile );
-                        attach( signatureArtifact );
-                    }
-                    else
-                    {
-                        throw new MojoExecutionException(
-                                "Missing signature for artifact: " + artifact );
                     }
+                } ) );
+            }
+            List<String> problems = new ArrayList<String>();
+            for ( Future<String> check : checks )
+            {
+                String problem = EaseHelper.await( check );
+                if ( problem != null )
+                {
+                    getLog().error( problem );
+                    problems.add( problem );
                 }
             }
+            if ( !problems.isEmpty() )
+            {
+                throw new MojoExecutionException( problems.size()
+                                                  + " signature problem(s): "
+                                                  + problems );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private String checkSignature( Artifact artifact,
+            PgpSignatures signatures, PgpSigner signer ) throws IOException,
+            PGPException
+    {
+        File signatureFile = signatureFile( artifact );
+        long check = TimingReport.now();
+        boolean exists = signatureIndex.exists( signatureFile );
+        report.phase( "check", check );
+        if ( !exists )
+        {
+            if ( signer == null )
+            {
+                return "Missing signature for artifact: " + artifact;
+            }
+            long sign = TimingReport.now();
+            signer.sign( artifact.getFile(), signatureFile );
+            report.phase( "sign", sign, artifact.getFile()
+                    .length() );
+            getLog().info( "Signed: " + artifact );
+        }
+        if ( signatures != null )
+        {
+            long verify = TimingReport.now();
+            String problem = signatures.verify( artifact.getFile(),
+                    signatureFile );
+            report.phase( "verify", verify, artifact.getFile()
+                    .length() );
+            if ( problem != null )
+            {
+                return "Invalid signature for artifact: " + artifact + ", "
+                       + problem;
+            }
+        }
+        return null;
+    }
+
+    private PgpSigner loadSigner() throws MojoExecutionException
+    {
+        if ( !signMissing )
+        {
+            return null;
+        }
+        if ( secretKeyring == null )
+        {
+            throw new MojoExecutionException(
+                    "A secretKeyring is required to sign missing signatures." );
+        }
+        try
+        {
+            return PgpSigner.load( secretKeyring, keyname, passphrase );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not read keyring: "
+                                              + secretKeyring, ioe );
+        }
+        catch ( PGPException pgpe )
+        {
+            throw new MojoExecutionException(
+                    "Could not load signing key from: " + secretKeyring, pgpe );
+        }
+    }
+
+    private static File signatureFile( Artifact artifact )
+    {
+        return FileUtils.getFile( artifact.getFile()
+                .getAbsolutePath() + ".asc" );
+    }
+
+    private PgpSignatures loadPublicKeyring() throws MojoExecutionException
+    {
+        if ( publicKeyring == null )
+        {
+            return null;
+        }
+        try
+        {
+            return PgpSignatures.loadPublicKeyring( publicKeyring );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not read keyring: "
+                                              + publicKeyring, ioe );
+        }
+        catch ( PGPException pgpe )
+        {
+            throw new MojoExecutionException( "Could not read keyring: "
+                                              + publicKeyring, pgpe );
         }
     }
 
     private void attach( Artifact artifact )
     {
         String id = artifact.getId();
-        if ( !attachedIds.contains( id ) )
+        if ( !attachments.containsKey( id ) )
         {
-            project.addAttachedArtifact( artifact );
-            attachedIds.add( id );
-            getLog().info( "Attached: " + id );
+            attachments.put( id, artifact );
         }
     }
+
+    /**
+     * Orders artifacts by groupId, artifactId, classifier and type, which puts
+     * each signature right after its artifact and makes the result
+     * independent of the incoming order.
+     */
+    private static final Comparator<Artifact> CANONICAL_ORDER = new Comparator<Artifact>()
+    {
+        @Override
+        public int compare( Artifact one, Artifact other )
+        {
+            int result = one.getGroupId()
+                    .compareTo( other.getGroupId() );
+            if ( result == 0 )
+            {
+                result = one.getArtifactId()
+                        .compareTo( other.getArtifactId() );
+            }
+            if ( result == 0 )
+            {
+                result = classifier( one ).compareTo( classifier( other ) );
+            }
+            if ( result == 0 )
+            {
+                result = one.getType()
+                        .compareTo( other.getType() );
+            }
+            if ( result == 0 )
+            {
+                result = one.getId()
+                        .compareTo( other.getId() );
+            }
+            return result;
+        }
+
+        private String classifier( Artifact artifact )
+        {
+            return artifact.hasClassifier() ? artifact.getClassifier() : "";
+        }
+    };
 }
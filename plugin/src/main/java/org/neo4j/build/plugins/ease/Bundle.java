@@ -0,0 +1,296 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes files into a single archive, as a stream: tar, gzip compressed tar or
+ * zip. Tar archives use the ustar format, with pax extended headers for paths
+ * and sizes which ustar can not hold.
+ */
+abstract class Bundle
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return the bundle format for a file name: tar.gz, tar or zip, or null
+     *         if the file name has none of these extensions.
+     */
+    static String format( String fileName )
+    {
+        if ( fileName.endsWith( ".tar.gz" ) || fileName.endsWith( ".tgz" ) )
+        {
+            return "tar.gz";
+        }
+        if ( fileName.endsWith( ".tar" ) )
+        {
+            return "tar";
+        }
+        if ( fileName.endsWith( ".zip" ) )
+        {
+            return "zip";
+        }
+        return null;
+    }
+
+    static Bundle tar( OutputStream out )
+    {
+        return new TarBundle( out );
+    }
+
+    static Bundle zip( OutputStream out, int level )
+    {
+        return new ZipBundle( out, level );
+    }
+
+    /**
+     * Adds a file, reading exactly size bytes of content.
+     */
+    abstract void add( String path, long size, long modified, InputStream in )
+            throws IOException;
+
+    abstract void close() throws IOException;
+
+    static void copy( InputStream in, OutputStream out, long size )
+            throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = size;
+        while ( remaining > 0 )
+        {
+            int read = in.read( buffer, 0,
+                    (int) Math.min( buffer.length, remaining ) );
+            if ( read == -1 )
+            {
+                throw new IOException( "File shrunk while being read." );
+            }
+            out.write( buffer, 0, read );
+            remaining -= read;
+        }
+    }
+
+    private static class TarBundle extends Bundle
+    {
+        private static final int RECORD = 512;
+
+        private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+        private final OutputStream out;
+
+        TarBundle( OutputStream out )
+        {
+            this.out = new BufferedOutputStream( out, BUFFER_SIZE );
+        }
+
+        @Override
+        void add( String path, long size, long modified, InputStream in )
+                throws IOException
+        {
+            byte[] name = path.getBytes( UTF_8 );
+            byte[] prefix = new byte[0];
+            int split = split( name );
+            StringBuilder pax = new StringBuilder();
+            if ( split > 0 )
+            {
+                prefix = Arrays.copyOfRange( name, 0, split );
+                name = Arrays.copyOfRange( name, split + 1, name.length );
+            }
+            else if ( split < 0 )
+            {
+                paxRecord( pax, "path", path );
+                name = truncated( name );
+            }
+            if ( size > MAX_OCTAL_SIZE )
+            {
+                paxRecord( pax, "size", Long.toString( size ) );
+            }
+            if ( pax.length() > 0 )
+            {
+                byte[] records = pax.toString()
+                        .getBytes( UTF_8 );
+                out.write( header( "PaxHeader".getBytes( UTF_8 ), name,
+                        records.length, modified, 'x' ) );
+                out.write( records );
+                pad( records.length );
+            }
+            out.write( header( prefix, name, size, modified, '0' ) );
+            copy( in, out, size );
+            pad( size );
+        }
+
+        /**
+         * @return 0 if the name fits as it is, the position of the slash to
+         *         split the name at into prefix and name, or -1 if it doesn't
+         *         fit either way.
+         */
+        private static int split( byte[] name )
+        {
+            if ( name.length <= 100 )
+            {
+                return 0;
+            }
+            int last = Math.min( 155, name.length - 2 );
+            for ( int i = Math.max( 1, name.length - 101 ); i <= last; i++ )
+            {
+                if ( name[i] == '/' )
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static byte[] truncated( byte[] name )
+        {
+            return Arrays.copyOfRange( name, Math.max( 0, name.length - 100 ),
+                    name.length );
+        }
+
+        private static void paxRecord( StringBuilder pax, String key,
+                String value )
+        {
+            int length = key.length() + value.getBytes( UTF_8 ).length + 3;
+            int total = length + Integer.toString( length )
+                    .length();
+            if ( Integer.toString( total )
+                    .length() > Integer.toString( length )
+                    .length() )
+            {
+                total++;
+            }
+            pax.append( total )
+                    .append( ' ' )
+                    .append( key )
+                    .append( '=' )
+                    .append( value )
+                    .append( '\n' );
+        }
+
+        private static byte[] header( byte[] prefix, byte[] name, long size,
+                long modified, char type )
+        {
+            byte[] header = new byte[RECORD];
+            System.arraycopy( name, 0, header, 0, Math.min( 100, name.length ) );
+            octal( header, 100, 8, 0644 );
+            octal( header, 108, 8, 0 );
+            octal( header, 116, 8, 0 );
+            if ( size > MAX_OCTAL_SIZE )
+            {
+                // base-256 for sizes ustar can't hold, the pax header has it too
+                header[124] = (byte) 0x80;
+                for ( int i = 0; i < 8; i++ )
+                {
+                    header[135 - i] = (byte) ( size >>> ( 8 * i ) );
+                }
+            }
+            else
+            {
+                octal( header, 124, 12, size );
+            }
+            octal( header, 136, 12, Math.max( 0, modified / 1000 ) );
+            Arrays.fill( header, 148, 156, (byte) ' ' );
+            header[156] = (byte) type;
+            System.arraycopy( "ustar\u000000".getBytes( UTF_8 ), 0, header,
+                    257, 8 );
+            System.arraycopy( prefix, 0, header, 345,
+                    Math.min( 155, prefix.length ) );
+            long checksum = 0;
+            for ( byte b : header )
+            {
+                checksum += b & 0xff;
+            }
+            octal( header, 148, 7, checksum );
+            return header;
+        }
+
+        /**
+         * Writes a zero padded octal number, followed by a NUL.
+         */
+        private static void octal( byte[] header, int offset, int length,
+                long value )
+        {
+            String digits = Long.toOctalString( value );
+            int pad = length - 1 - digits.length();
+            for ( int i = 0; i < pad; i++ )
+            {
+                header[offset + i] = '0';
+            }
+            for ( int i = 0; i < digits.length(); i++ )
+            {
+                header[offset + pad + i] = (byte) digits.charAt( i );
+            }
+            header[offset + length - 1] = 0;
+        }
+
+        private void pad( long size ) throws IOException
+        {
+            int remainder = (int) ( size % RECORD );
+            if ( remainder > 0 )
+            {
+                out.write( new byte[RECORD - remainder] );
+            }
+        }
+
+        @Override
+        void close() throws IOException
+        {
+            out.write( new byte[RECORD * 2] );
+            out.close();
+        }
+    }
+
+    private static class ZipBundle extends Bundle
+    {
+        private final ZipOutputStream out;
+
+        ZipBundle( OutputStream out, int level )
+        {
+            this.out = new ZipOutputStream( new BufferedOutputStream( out,
+                    BUFFER_SIZE ), UTF_8 );
+            this.out.setLevel( level );
+        }
+
+        @Override
+        void add( String path, long size, long modified, InputStream in )
+                throws IOException
+        {
+            ZipEntry entry = new ZipEntry( path );
+            entry.setTime( modified );
+            out.putNextEntry( entry );
+            copy( in, out, size );
+            out.closeEntry();
+        }
+
+        @Override
+        void close() throws IOException
+        {
+            out.close();
+        }
+    }
+}
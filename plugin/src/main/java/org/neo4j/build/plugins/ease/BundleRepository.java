@@ -0,0 +1,147 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * An artifact repository inside a zip bundle, as written by the export goal,
+ * read without extracting the bundle. The zip file system reads the central
+ * directory of the bundle once and looks entries up from it, and artifacts are
+ * extracted one by one, straight to where they are staged.
+ */
+final class BundleRepository implements Closeable
+{
+    private final File bundle;
+
+    private final FileSystem fileSystem;
+
+    private final DefaultRepositoryLayout layout = new DefaultRepositoryLayout();
+
+    private BundleRepository( File bundle, FileSystem fileSystem )
+    {
+        this.bundle = bundle;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @return true if the location is a bundle rather than a repository
+     *         directory.
+     */
+    static boolean isBundle( File location )
+    {
+        return location.isFile() && location.getName()
+                .endsWith( ".zip" );
+    }
+
+    static BundleRepository open( File bundle ) throws MojoExecutionException
+    {
+        try
+        {
+            return new BundleRepository( bundle, FileSystems.newFileSystem(
+                    bundle.toPath(), (ClassLoader) null ) );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not open bundle: "
+                                              + bundle, ioe );
+        }
+        catch ( ProviderNotFoundException pnfe )
+        {
+            throw new MojoExecutionException( "Could not open bundle: "
+                                              + bundle, pnfe );
+        }
+    }
+
+    /**
+     * @return the entry of an artifact in the bundle.
+     */
+    Path find( Artifact artifact ) throws MojoExecutionException
+    {
+        Path entry = fileSystem.getPath( layout.pathOf( artifact ) );
+        if ( !Files.isRegularFile( entry ) )
+        {
+            throw new MojoExecutionException( "Missing artifact file: "
+                                              + entry + " in bundle: "
+                                              + bundle );
+        }
+        return entry;
+    }
+
+    /**
+     * Extracts an entry to a destination file, unless an earlier extraction
+     * with the same size and modification time is there already.
+     * 
+     * @return the extracted file.
+     */
+    File extract( Path entry, File destination ) throws MojoExecutionException
+    {
+        try
+        {
+            long size = Files.size( entry );
+            FileTime modified = Files.getLastModifiedTime( entry );
+            if ( destination.isFile()
+                 && !Files.isSymbolicLink( destination.toPath() )
+                 && destination.length() == size
+                 && destination.lastModified() == modified.toMillis() )
+            {
+                return destination;
+            }
+            Files.createDirectories( destination.getParentFile()
+                    .toPath() );
+            File tempFile = EaseHelper.tempFileFor( destination );
+            try
+            {
+                Files.copy( entry, tempFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING );
+                Files.setLastModifiedTime( tempFile.toPath(), modified );
+                EaseHelper.moveIntoPlace( tempFile, destination );
+            }
+            finally
+            {
+                Files.deleteIfExists( tempFile.toPath() );
+            }
+            return destination;
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not extract " + entry
+                                              + " from bundle: " + bundle, ioe );
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        fileSystem.close();
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Computes file checksums. Checksums are written as algorithm:hex, for example
+ * sha256:9f86d08..., where the algorithm is the lower case digest name without
+ * dashes.
+ */
+final class Checksums
+{
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Files are read through one direct buffer per thread, instead of mapping
+     * each file, which costs more than it saves for artifact sized files.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect( BUFFER_SIZE );
+        }
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Checksums()
+    {
+    }
+
+    /**
+     * @return the label for a digest name, like sha256 for SHA-256.
+     */
+    static String label( String digestName ) throws MojoExecutionException
+    {
+        newDigest( digestName );
+        return digestName.toLowerCase( Locale.ENGLISH )
+                .replace( "-", "" );
+    }
+
+    static MessageDigest newDigest( String digestName )
+            throws MojoExecutionException
+    {
+        try
+        {
+            return MessageDigest.getInstance( digestName );
+        }
+        catch ( NoSuchAlgorithmException nsae )
+        {
+            throw new MojoExecutionException( "Unknown checksum algorithm: "
+                                              + digestName, nsae );
+        }
+    }
+
+    /**
+     * @return the checksum of a file, formatted as algorithm:hex.
+     */
+    static String checksum( File file, String label ) throws IOException,
+            MojoExecutionException
+    {
+        return label + ':' + hex( digest( file, digestName( label ) ) );
+    }
+
+    /**
+     * Check a file against a checksum formatted as algorithm:hex.
+     */
+    static boolean matches( File file, String checksum ) throws IOException,
+            MojoExecutionException
+    {
+        int separator = checksum.indexOf( ':' );
+        if ( separator == -1 )
+        {
+            throw new MojoExecutionException( "Can not parse checksum: "
+                                              + checksum );
+        }
+        return checksum.equals( checksum( file,
+                checksum.substring( 0, separator ) ) );
+    }
+
+    static byte[] digest( File file, String digestName ) throws IOException,
+            MojoExecutionException
+    {
+        return digests( file, digestName )[0];
+    }
+
+    /**
+     * Computes several digests of a file in one pass over it.
+     */
+    static byte[][] digests( File file, String... digestNames )
+            throws IOException, MojoExecutionException
+    {
+        MessageDigest[] digests = new MessageDigest[digestNames.length];
+        for ( int i = 0; i < digests.length; i++ )
+        {
+            digests[i] = newDigest( digestNames[i] );
+        }
+        ByteBuffer buffer = BUFFERS.get();
+        FileChannel channel = FileChannel.open( file.toPath(),
+                StandardOpenOption.READ );
+        try
+        {
+            buffer.clear();
+            while ( channel.read( buffer ) != -1 )
+            {
+                buffer.flip();
+                for ( MessageDigest digest : digests )
+                {
+                    buffer.mark();
+                    digest.update( buffer );
+                    buffer.reset();
+                }
+                buffer.clear();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+        byte[][] results = new byte[digests.length][];
+        for ( int i = 0; i < digests.length; i++ )
+        {
+            results[i] = digests[i].digest();
+        }
+        return results;
+    }
+
+    static String hex( byte[] bytes )
+    {
+        char[] chars = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            chars[i * 2] = HEX[( bytes[i] >> 4 ) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String( chars );
+    }
+
+    private static String digestName( String label )
+    {
+        String upper = label.toUpperCase( Locale.ENGLISH );
+        if ( upper.startsWith( "SHA" ) && upper.length() > 3
+             && upper.charAt( 3 ) != '-' )
+        {
+            return "SHA-" + upper.substring( 3 );
+        }
+        return upper;
+    }
+}
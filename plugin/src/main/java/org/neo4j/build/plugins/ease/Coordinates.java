@@ -0,0 +1,190 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Immutable artifact coordinates, as written in artifact lists:
+ * 
+ * <pre>
+ * groupId:artifactId:type[:classifier]:version
+ * </pre>
+ * 
+ * Coordinates created through a {@link CoordinatesPool} share their string
+ * instances, which matters for big lists repeating the same groupIds and
+ * versions over and over.
+ */
+final class Coordinates
+{
+    private final String groupId;
+
+    private final String artifactId;
+
+    private final String type;
+
+    private final String classifier;
+
+    private final String version;
+
+    Coordinates( String groupId, String artifactId, String type,
+            String classifier, String version )
+    {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.type = type;
+        this.classifier = classifier;
+        this.version = version;
+    }
+
+    /**
+     * Parses coordinates in a single pass over the text, without splitting
+     * it.
+     */
+    static Coordinates parse( String text, CoordinatesPool pool )
+            throws MojoExecutionException
+    {
+        return parse( text, 0, text.length(), pool );
+    }
+
+    static Coordinates parse( String text, int start, int end,
+            CoordinatesPool pool ) throws MojoExecutionException
+    {
+        int[] separators = new int[4];
+        int count = 0;
+        for ( int i = start; i < end; i++ )
+        {
+            if ( text.charAt( i ) == ':' )
+            {
+                if ( count == separators.length )
+                {
+                    throw cannotParse( text, start, end );
+                }
+                separators[count++] = i;
+            }
+        }
+        if ( count < 3 || separators[0] == start
+             || separators[1] == separators[0] + 1
+             || separators[2] == separators[1] + 1
+             || separators[count - 1] + 1 == end )
+        {
+            throw cannotParse( text, start, end );
+        }
+        String groupId = pool.intern( text, start, separators[0] );
+        String artifactId = pool.intern( text, separators[0] + 1,
+                separators[1] );
+        String type = pool.intern( text, separators[1] + 1, separators[2] );
+        String classifier = null;
+        if ( count == 4 )
+        {
+            classifier = pool.intern( text, separators[2] + 1, separators[3] );
+        }
+        String version = pool.intern( text, separators[count - 1] + 1, end );
+        return new Coordinates( groupId, artifactId, type, classifier, version );
+    }
+
+    private static MojoExecutionException cannotParse( String text,
+            int start, int end )
+    {
+        return new MojoExecutionException( "Can not parse coordinates: "
+                                           + text.substring( start, end ) );
+    }
+
+    String getGroupId()
+    {
+        return groupId;
+    }
+
+    String getArtifactId()
+    {
+        return artifactId;
+    }
+
+    String getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return the classifier, or null.
+     */
+    String getClassifier()
+    {
+        return classifier;
+    }
+
+    String getVersion()
+    {
+        return version;
+    }
+
+    void appendTo( StringBuilder builder )
+    {
+        builder.append( groupId )
+                .append( ':' )
+                .append( artifactId )
+                .append( ':' )
+                .append( type )
+                .append( ':' );
+        if ( classifier != null )
+        {
+            builder.append( classifier )
+                    .append( ':' );
+        }
+        builder.append( version );
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder( 64 );
+        appendTo( builder );
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals( Object other )
+    {
+        if ( this == other )
+        {
+            return true;
+        }
+        if ( !( other instanceof Coordinates ) )
+        {
+            return false;
+        }
+        Coordinates that = (Coordinates) other;
+        return groupId.equals( that.groupId )
+               && artifactId.equals( that.artifactId )
+               && type.equals( that.type )
+               && ( classifier == null ? that.classifier == null
+                       : classifier.equals( that.classifier ) )
+               && version.equals( that.version );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = groupId.hashCode();
+        result = 31 * result + artifactId.hashCode();
+        result = 31 * result + type.hashCode();
+        result = 31 * result + ( classifier == null ? 0 : classifier.hashCode() );
+        return 31 * result + version.hashCode();
+    }
+}
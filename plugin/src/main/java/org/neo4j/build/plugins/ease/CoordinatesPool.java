@@ -0,0 +1,102 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+/**
+ * Interns the parts of coordinates, so repeated groupIds, artifactIds,
+ * versions and types share a single string instance. Lookups work directly
+ * on a region of the source text, so a part that has been seen before costs
+ * no allocation at all. Safe to use from several threads.
+ */
+final class CoordinatesPool
+{
+    private String[] table = new String[256];
+
+    private int size = 0;
+
+    Coordinates coordinates( String groupId, String artifactId, String type,
+            String classifier, String version )
+    {
+        return new Coordinates( intern( groupId ), intern( artifactId ),
+                intern( type ), classifier == null ? null
+                        : intern( classifier ), intern( version ) );
+    }
+
+    String intern( String string )
+    {
+        return intern( string, 0, string.length() );
+    }
+
+    /**
+     * @return the pooled instance of the text between start and end.
+     */
+    synchronized String intern( String text, int start, int end )
+    {
+        int length = end - start;
+        int hash = 0;
+        for ( int i = start; i < end; i++ )
+        {
+            hash = 31 * hash + text.charAt( i );
+        }
+        int mask = table.length - 1;
+        int slot = spread( hash ) & mask;
+        String candidate;
+        while ( ( candidate = table[slot] ) != null )
+        {
+            if ( candidate.length() == length
+                 && candidate.hashCode() == hash
+                 && text.regionMatches( start, candidate, 0, length ) )
+            {
+                return candidate;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        String string = text.substring( start, end );
+        table[slot] = string;
+        if ( ++size * 2 > table.length )
+        {
+            grow();
+        }
+        return string;
+    }
+
+    private void grow()
+    {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for ( String string : old )
+        {
+            if ( string != null )
+            {
+                int slot = spread( string.hashCode() ) & mask;
+                while ( table[slot] != null )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                table[slot] = string;
+            }
+        }
+    }
+
+    private static int spread( int hash )
+    {
+        return hash ^ ( hash >>> 16 );
+    }
+}
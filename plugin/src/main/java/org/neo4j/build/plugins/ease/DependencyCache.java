@@ -0,0 +1,109 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the filtered dependency set of an aggregate project, so the
+ * dependency tree only has to be built again when the key changes. The file
+ * holds the key on the first line, followed by one groupId:artifactId:type:version
+ * line per dependency.
+ */
+final class DependencyCache
+{
+    private DependencyCache()
+    {
+    }
+
+    /**
+     * @return the cached dependency coordinates, or null if there's no cache
+     *         for this key.
+     */
+    static List<String> load( File cacheFile, String key ) throws IOException
+    {
+        if ( !cacheFile.isFile() )
+        {
+            return null;
+        }
+        BufferedReader reader = new BufferedReader( new InputStreamReader(
+                new FileInputStream( cacheFile ), "UTF-8" ) );
+        try
+        {
+            if ( !key.equals( reader.readLine() ) )
+            {
+                return null;
+            }
+            List<String> dependencies = new ArrayList<String>();
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.length() > 0 )
+                {
+                    dependencies.add( line );
+                }
+            }
+            return dependencies;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    static void save( File cacheFile, String key, List<String> dependencies )
+            throws IOException
+    {
+        File tempFile = EaseHelper.tempFileFor( cacheFile );
+        try
+        {
+            Writer writer = new OutputStreamWriter( new FileOutputStream(
+                    tempFile ), "UTF-8" );
+            try
+            {
+                writer.write( key );
+                writer.write( '\n' );
+                for ( String dependency : dependencies )
+                {
+                    writer.write( dependency );
+                    writer.write( '\n' );
+                }
+            }
+            finally
+            {
+                writer.close();
+            }
+            EaseHelper.moveIntoPlace( tempFile, cacheFile );
+        }
+        finally
+        {
+            Files.deleteIfExists( tempFile.toPath() );
+        }
+    }
+}
@@ -0,0 +1,609 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Deploys all artifacts in an artifact list to a remote repository, without
+ * attaching them to the project first.
+ * 
+ * The artifacts go through a pipeline: the list is read and the artifacts are
+ * resolved on the calling thread, then staged and checksummed by one pool of
+ * threads, and uploaded with their .sha1 and .md5 checksums by another. The
+ * stages are connected by bounded queues, so uploads start while later
+ * artifacts are still being staged, and a slow upload holds back reading the
+ * list instead of piling up work in memory.
+ * 
+ * With -Dease.journal, uploaded artifacts are recorded in a journal in the
+ * build directory, so an interrupted deploy can be resumed with
+ * -Dease.resume.
+ * 
+ * The repository metadata (maven-metadata.xml) is not updated, which is what
+ * repository managers expect for release repositories. Skip the regular
+ * deploy plugin in the project running this goal.
+ * 
+ * @goal deploy
+ * @phase deploy
+ * @requiresProject true
+ * @threadSafe true
+ */
+public class DeployMojo extends AbstractMojo
+{
+    /**
+     * File system location of artifact list. A binary -artifacts.idx index
+     * next to the list is used instead of it when present. Lists referenced
+     * from the list are looked up in the artifact repository and deployed as
+     * well.
+     * 
+     * @parameter expression="${artifactListLocation}"
+     * @required
+     */
+    private String artifactListLocation;
+
+    /**
+     * File system location of artifact repository to fetch artifacts from. It
+     * is not allowed to point artifactRepositoryLocation to the location of the
+     * local repository.
+     * 
+     * It can also point to a zip bundle written by the export goal. Artifacts
+     * are then extracted one by one into the build directory and uploaded from
+     * there, whatever the staging mode.
+     * 
+     * @parameter expression="${artifactRepositoryLocation}"
+     */
+    private String artifactRepositoryLocation;
+
+    /**
+     * Url of the repository to deploy to, either a file: url or an http: or
+     * https: url accepting PUT requests.
+     * 
+     * @parameter expression="${ease.deploy.url}"
+     * @required
+     */
+    private String repositoryUrl;
+
+    /**
+     * Id of the server in the settings holding the username and password for
+     * the repository. Only plain text passwords are supported.
+     * 
+     * @parameter expression="${ease.deploy.repositoryId}"
+     */
+    private String repositoryId;
+
+    /**
+     * Number of concurrent uploads. Uploads are mostly waiting on the network,
+     * so this can be well above the number of processors.
+     * 
+     * @parameter expression="${ease.deploy.uploadThreads}" default-value="8"
+     */
+    private int uploadThreads;
+
+    /**
+     * Number of threads used to stage and checksum artifacts, 0 means one
+     * thread per processor.
+     * 
+     * @parameter expression="${ease.deploy.stageThreads}" default-value="0"
+     */
+    private int stageThreads;
+
+    /**
+     * Maximum number of artifacts resolved but not yet uploaded.
+     * 
+     * @parameter expression="${ease.deploy.queueSize}" default-value="64"
+     */
+    private int queueSize;
+
+    /**
+     * How to stage artifacts in the build directory before uploading them:
+     * copy, hardlink, symlink or none. Using none uploads the files
+     * from the artifact repository.
+     * 
+     * @parameter expression="${stagingMode}" default-value="none"
+     */
+    private String stagingMode;
+
+    /**
+     * Verify artifact files against the size and checksum recorded in the
+     * artifact list, when the list has them.
+     * 
+     * @parameter expression="${verifyChecksums}" default-value="true"
+     */
+    private boolean verifyChecksums;
+
+    /**
+     * Record every uploaded artifact in a journal in the build directory, so
+     * an interrupted run can be resumed. Always on when resuming.
+     * 
+     * @parameter expression="${ease.journal}" default-value="false"
+     */
+    private boolean useJournal;
+
+    /**
+     * Resume an interrupted run, skipping the artifacts its journal records as
+     * uploaded to the same repository, with the same checksum in the artifact
+     * list, or without one, from a source file of the same size and
+     * modification time. Skipped artifacts are not staged or read.
+     * 
+     * @parameter expression="${ease.resume}" default-value="false"
+     */
+    private boolean resume;
+
+    /**
+     * Write a JSON report of the time spent looking up, staging, checksumming
+     * and uploading artifacts, with the latency per artifact from staging to
+     * upload, to ease-deploy-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    private boolean writeReport;
+
+    /**
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * @parameter default-value="${settings}"
+     * @required
+     * @readonly
+     */
+    private Settings settings;
+
+    /**
+     * Used to create artifact instances.
+     * 
+     * @component role="org.apache.maven.artifact.factory.ArtifactFactory"
+     * @required
+     * @readonly
+     */
+    protected ArtifactFactory artifactFactory;
+
+    /**
+     * Location of the local repository.
+     * 
+     * @parameter expression="${localRepository}"
+     * @readonly
+     * @required
+     */
+    protected ArtifactRepository localRepository;
+
+    private static final Charset US_ASCII = Charset.forName( "US-ASCII" );
+
+    private final DefaultRepositoryLayout layout = new DefaultRepositoryLayout();
+
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private ArtifactRepository artifactRepository;
+
+    private BundleRepository bundle = null;
+
+    private StagingMode staging;
+
+    private RepositoryUploader uploader;
+
+    private Journal journal = null;
+
+    private TimingReport report = null;
+
+    @Override
+    public void execute() throws MojoExecutionException
+    {
+        report = new TimingReport( "deploy", project.getId() );
+        staging = StagingMode.fromString( stagingMode, getLog() );
+        uploader = createUploader();
+        if ( artifactRepositoryLocation != null
+             && BundleRepository.isBundle( FileUtils.getFile( artifactRepositoryLocation ) ) )
+        {
+            bundle = BundleRepository.open( FileUtils.getFile( artifactRepositoryLocation ) );
+            getLog().info(
+                    "Deploying artifacts from bundle at: "
+                            + artifactRepositoryLocation + " to: "
+                            + repositoryUrl );
+        }
+        else
+        {
+            artifactRepository = AttachMojo.setupArtifactRepository(
+                    localRepository, artifactRepositoryLocation );
+            getLog().info(
+                    "Deploying artifacts from repository at: "
+                            + artifactRepository.getBasedir() + " to: "
+                            + repositoryUrl );
+        }
+
+        String buildDir = project.getBuild()
+                .getDirectory();
+        if ( !FileUtils.fileExists( buildDir ) )
+        {
+            FileUtils.mkdir( buildDir );
+        }
+
+        if ( useJournal || resume )
+        {
+            journal = EaseHelper.openJournal( new File( buildDir,
+                    "ease-deploy.journal" ), "deploy to " + repositoryUrl,
+                    resume, getLog() );
+        }
+
+        long start = System.currentTimeMillis();
+        Semaphore queued = new Semaphore( Math.max( 1, queueSize ) );
+        List<Future<Future<Artifact>>> deployments = new ArrayList<Future<Future<Artifact>>>();
+        ExecutorService stagers = EaseHelper.newExecutor( stageThreads );
+        ExecutorService uploaders = EaseHelper.newExecutor( uploadThreads );
+        ArtifactListWalker lists = new ArtifactListWalker(
+                FileUtils.getFile( artifactListLocation ), getLog() );
+        try
+        {
+            ArtifactListEntry entry;
+            while ( !failed.get() && ( entry = next( lists ) ) != null )
+            {
+                Coordinates coordinates = entry.getCoordinates();
+                Artifact findArtifact = artifactFactory.createArtifactWithClassifier(
+                        coordinates.getGroupId(), coordinates.getArtifactId(),
+                        coordinates.getVersion(), coordinates.getType(),
+                        coordinates.getClassifier() );
+                long lookup = TimingReport.now();
+                Artifact artifact;
+                Path bundled = null;
+                if ( bundle != null )
+                {
+                    artifact = findArtifact;
+                    bundled = bundle.find( findArtifact );
+                }
+                else
+                {
+                    artifact = AttachMojo.findExternalArtifact( findArtifact,
+                            artifactRepository );
+                }
+                report.phase( "lookup", lookup );
+                boolean verified = false;
+                if ( entry.isReference() )
+                {
+                    if ( bundled != null )
+                    {
+                        artifact.setFile( bundle.extract( bundled,
+                                EaseHelper.stagedFile( buildDir, artifact ) ) );
+                    }
+                    if ( verifyChecksums )
+                    {
+                        AttachMojo.verifyChecksum( artifact.getFile(), entry );
+                        verified = true;
+                    }
+                    lists.push( artifact.getFile(), verified );
+                }
+                acquire( queued );
+                deployments.add( stagers.submit( new Stage( artifact, bundled,
+                        entry, verified, uploaders, queued ) ) );
+            }
+            int count = 0;
+            for ( Future<Future<Artifact>> deployment : deployments )
+            {
+                Artifact deployed = EaseHelper.await( EaseHelper.await( deployment ) );
+                getLog().debug( "Deployed: " + deployed );
+                count++;
+            }
+            long millis = Math.max( 1, System.currentTimeMillis() - start );
+            getLog().info(
+                    "Deployed " + ( count - skipped.get() ) + " artifacts, "
+                            + uploadedBytes.get() / 1024 + " KiB in " + millis
+                            + " ms." );
+            if ( skipped.get() > 0 )
+            {
+                getLog().info(
+                        "Skipped " + skipped.get()
+                                + " artifacts uploaded by an earlier run." );
+            }
+        }
+        finally
+        {
+            stagers.shutdownNow();
+            uploaders.shutdownNow();
+            lists.close();
+            if ( journal != null )
+            {
+                EaseHelper.closeJournal( journal, getLog() );
+            }
+            if ( bundle != null )
+            {
+                EaseHelper.closeBundle( bundle, getLog() );
+            }
+            if ( writeReport )
+            {
+                report.write( buildDir, getLog() );
+            }
+        }
+    }
+
+    private ArtifactListEntry next( ArtifactListWalker lists )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        try
+        {
+            return lists.next();
+        }
+        finally
+        {
+            report.phase( "list", start );
+        }
+    }
+
+    private RepositoryUploader createUploader() throws MojoExecutionException
+    {
+        String username = null;
+        String password = null;
+        if ( repositoryId != null )
+        {
+            Server server = settings.getServer( repositoryId );
+            if ( server == null )
+            {
+                throw new MojoExecutionException(
+                        "No server in the settings with id: " + repositoryId );
+            }
+            username = server.getUsername();
+            password = server.getPassword();
+        }
+        return RepositoryUploader.forUrl( repositoryUrl, username, password );
+    }
+
+    private static Future<Artifact> completed( final Artifact artifact )
+    {
+        FutureTask<Artifact> completed = new FutureTask<Artifact>(
+                new Callable<Artifact>()
+                {
+                    @Override
+                    public Artifact call()
+                    {
+                        return artifact;
+                    }
+                } );
+        completed.run();
+        return completed;
+    }
+
+    private static void acquire( Semaphore queued )
+            throws MojoExecutionException
+    {
+        try
+        {
+            queued.acquire();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread()
+                    .interrupt();
+            throw new MojoExecutionException( "Interrupted.", ie );
+        }
+    }
+
+    /**
+     * Verifies, stages and checksums one artifact, then queues its upload.
+     * Artifacts in a bundle are staged by extracting them. Artifacts the
+     * journal records as uploaded are skipped first.
+     * The queue slot taken for the artifact is given back once it is
+     * uploaded, or when it fails.
+     */
+    private class Stage implements Callable<Future<Artifact>>
+    {
+        private final Artifact artifact;
+
+        private final Path bundled;
+
+        private final ArtifactListEntry entry;
+
+        private final boolean verified;
+
+        private final ExecutorService uploaders;
+
+        private final Semaphore queued;
+
+        Stage( Artifact artifact, Path bundled, ArtifactListEntry entry,
+                boolean verified, ExecutorService uploaders, Semaphore queued )
+        {
+            this.artifact = artifact;
+            this.bundled = bundled;
+            this.entry = entry;
+            this.verified = verified;
+            this.uploaders = uploaders;
+            this.queued = queued;
+        }
+
+        @Override
+        public Future<Artifact> call() throws MojoExecutionException
+        {
+            final long start = TimingReport.now();
+            boolean handedOver = false;
+            try
+            {
+                final String key = entry.getCoordinates()
+                        .toString();
+                final String hash = journal == null ? null : journalHash();
+                if ( journal != null && journal.isCompleted( key, hash ) )
+                {
+                    skipped.incrementAndGet();
+                    report.artifact( 0 );
+                    queued.release();
+                    handedOver = true;
+                    return completed( artifact );
+                }
+                File file;
+                if ( bundled != null )
+                {
+                    long extract = TimingReport.now();
+                    file = bundle.extract( bundled, EaseHelper.stagedFile(
+                            project.getBuild()
+                                    .getDirectory(), artifact ) );
+                    report.phase( "extract", extract, file.length() );
+                    artifact.setFile( file );
+                }
+                else
+                {
+                    file = artifact.getFile();
+                }
+                if ( verifyChecksums && !verified && entry.getChecksum() != null )
+                {
+                    long verify = TimingReport.now();
+                    AttachMojo.verifyChecksum( file, entry );
+                    report.phase( "verify", verify, entry.getSize() );
+                }
+                final File staged;
+                byte[][] digests;
+                try
+                {
+                    if ( bundled != null )
+                    {
+                        staged = file;
+                    }
+                    else
+                    {
+                        long stage = TimingReport.now();
+                        File destination = EaseHelper.stagedFile(
+                                project.getBuild()
+                                        .getDirectory(), artifact );
+                        Files.createDirectories( destination.getParentFile()
+                                .toPath() );
+                        staged = staging.stage( file, destination );
+                        report.phase( "stage", stage, staged.length() );
+                    }
+                    long checksum = TimingReport.now();
+                    digests = Checksums.digests( staged, "SHA-1", "MD5" );
+                    report.phase( "checksum", checksum, staged.length() );
+                }
+                catch ( IOException ioe )
+                {
+                    throw new MojoExecutionException( "Could not stage file: "
+                                                      + file, ioe );
+                }
+                final byte[] sha1 = Checksums.hex( digests[0] )
+                        .getBytes( US_ASCII );
+                final byte[] md5 = Checksums.hex( digests[1] )
+                        .getBytes( US_ASCII );
+                final String path = layout.pathOf( artifact );
+                Future<Artifact> upload = uploaders.submit( new Callable<Artifact>()
+                {
+                    @Override
+                    public Artifact call() throws MojoExecutionException
+                    {
+                        boolean uploaded = false;
+                        try
+                        {
+                            long upload = TimingReport.now();
+                            uploader.upload( staged, path );
+                            uploader.upload( sha1, path + ".sha1" );
+                            uploader.upload( md5, path + ".md5" );
+                            report.phase( "upload", upload, staged.length() );
+                            report.artifact( start, staged.length() );
+                            uploadedBytes.addAndGet( staged.length() );
+                            if ( hash != null )
+                            {
+                                journal.record( key, hash );
+                            }
+                            uploaded = true;
+                            return artifact;
+                        }
+                        catch ( IOException ioe )
+                        {
+                            throw new MojoExecutionException(
+                                    "Could not upload " + path + " to: "
+                                            + repositoryUrl, ioe );
+                        }
+                        finally
+                        {
+                            if ( !uploaded )
+                            {
+                                failed.set( true );
+                            }
+                            queued.release();
+                        }
+                    }
+                } );
+                handedOver = true;
+                return upload;
+            }
+            finally
+            {
+                if ( !handedOver )
+                {
+                    failed.set( true );
+                    queued.release();
+                }
+            }
+        }
+
+        /**
+         * The checksum from the list, or without one, the size and
+         * modification time of the source, so completed artifacts are skipped
+         * without staging or reading them.
+         */
+        private String journalHash() throws MojoExecutionException
+        {
+            if ( entry.getChecksum() != null )
+            {
+                return entry.getChecksum();
+            }
+            if ( bundled == null )
+            {
+                File file = artifact.getFile();
+                return "stat:" + file.length() + ":" + file.lastModified();
+            }
+            try
+            {
+                return "stat:" + Files.size( bundled ) + ":"
+                       + Files.getLastModifiedTime( bundled )
+                               .toMillis();
+            }
+            catch ( IOException ioe )
+            {
+                throw new MojoExecutionException( "Could not read bundle entry: "
+                                                  + bundled, ioe );
+            }
+        }
+    }
+}
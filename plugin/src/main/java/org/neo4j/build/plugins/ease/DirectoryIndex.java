@@ -0,0 +1,100 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Answers whether files exist from a single listing per directory, instead
+ * of one file system call per file. That matters on network file systems,
+ * where every call is a round trip. Safe to use from several threads.
+ */
+class DirectoryIndex
+{
+    private final ConcurrentMap<File, Listing> listings = new ConcurrentHashMap<File, Listing>();
+
+    boolean exists( File file ) throws IOException
+    {
+        File dir = file.getAbsoluteFile()
+                .getParentFile();
+        Listing listing = listings.get( dir );
+        if ( listing == null )
+        {
+            Listing newListing = new Listing( dir );
+            listing = listings.putIfAbsent( dir, newListing );
+            if ( listing == null )
+            {
+                listing = newListing;
+            }
+        }
+        return listing.names()
+                .contains( file.getName() );
+    }
+
+    private static class Listing
+    {
+        private final File dir;
+
+        private Set<String> names = null;
+
+        Listing( File dir )
+        {
+            this.dir = dir;
+        }
+
+        synchronized Set<String> names() throws IOException
+        {
+            if ( names == null )
+            {
+                Set<String> listed = new HashSet<String>();
+                try
+                {
+                    DirectoryStream<Path> stream = Files.newDirectoryStream( dir.toPath() );
+                    try
+                    {
+                        for ( Path path : stream )
+                        {
+                            listed.add( path.getFileName()
+                                    .toString() );
+                        }
+                    }
+                    finally
+                    {
+                        stream.close();
+                    }
+                }
+                catch ( NoSuchFileException nsfe )
+                {
+                    // a missing directory has no files
+                }
+                names = listed;
+            }
+            return names;
+        }
+    }
+}
@@ -18,9 +18,23 @@
  */
 package org.neo4j.build.plugins.ease;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
@@ -29,33 +43,248 @@ import org.codehaus.plexus.util.FileUtils;
 
 class EaseHelper
 {
-    static void writeAndAttachArtifactList( StringBuilder builder,
+    private static final DefaultRepositoryLayout LAYOUT = new DefaultRepositoryLayout();
+
+    static void writeAndAttachArtifactList( Collection<String> artifactList,
+            MavenProject project, MavenProjectHelper projectHelper, Log log )
+            throws MojoExecutionException
+    {
+        File destFile = artifactListFile( project, "txt" );
+        writeArtifactList( artifactList, destFile, log );
+        projectHelper.attachArtifact( project, "txt", "artifacts", destFile );
+        log.info( "Successfully attached artifact list to the project." );
+    }
+
+    static void writeAndAttachArtifactIndex( Collection<String> artifactList,
             MavenProject project, MavenProjectHelper projectHelper, Log log )
             throws MojoExecutionException
     {
-        String buildDir = project.getBuild()
-                .getDirectory();
-        String destFile = buildDir + File.separator + project.getArtifactId()
-                          + "-" + project.getVersion() + "-artifacts.txt";
+        File destFile = artifactListFile( project, "idx" );
+        writeArtifactIndex( artifactList, destFile, log );
+        projectHelper.attachArtifact( project, "idx", "artifacts", destFile );
+        log.info( "Successfully attached artifact list index to the project." );
+    }
+
+    static void writeArtifactList( Collection<String> artifactList,
+            File destFile, Log log ) throws MojoExecutionException
+    {
+        StringBuilder builder = new StringBuilder( artifactList.size() * 64 );
+        for ( String artifactLine : artifactList )
+        {
+            builder.append( artifactLine )
+                    .append( '\n' );
+        }
         try
         {
-            if ( FileUtils.fileExists( destFile ) )
+            writeIfChanged( destFile, builder.toString()
+                    .getBytes( "UTF-8" ), log );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not write artifact list.",
+                    ioe );
+        }
+    }
+
+    static void writeArtifactIndex( Collection<String> artifactList,
+            File destFile, Log log ) throws MojoExecutionException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    artifactList.size() * 32 );
+            ArtifactListIndex.write( artifactList, out );
+            writeIfChanged( destFile, out.toByteArray(), log );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException(
+                    "Could not write artifact list index.", ioe );
+        }
+    }
+
+    private static File artifactListFile( MavenProject project,
+            String extension )
+    {
+        return new File( project.getBuild()
+                .getDirectory(), project.getArtifactId() + "-"
+                                 + project.getVersion() + "-artifacts."
+                                 + extension );
+    }
+
+    /**
+     * Writes the content to a file, unless the file already has the exact
+     * same content. Leaving an unchanged file alone keeps its modification
+     * time, so up to date checks further down the line still hold.
+     */
+    private static void writeIfChanged( File destFile, byte[] content, Log log )
+            throws IOException, MojoExecutionException
+    {
+        if ( destFile.isFile() && destFile.length() == content.length
+             && Arrays.equals( Checksums.digest( destFile, "SHA-1" ),
+                     digest( content ) ) )
+        {
+            log.info( "Skipped writing unchanged file: " + destFile );
+            return;
+        }
+        File tempFile = tempFileFor( destFile );
+        try
+        {
+            FileOutputStream out = new FileOutputStream( tempFile );
+            try
             {
-                FileUtils.fileDelete( destFile );
+                out.write( content );
             }
-            if ( !FileUtils.fileExists( buildDir ) )
+            finally
             {
-                FileUtils.mkdir( buildDir );
+                out.close();
             }
-            FileUtils.fileWrite( destFile, "UTF-8", builder.toString() );
+            moveIntoPlace( tempFile, destFile );
+        }
+        finally
+        {
+            Files.deleteIfExists( tempFile.toPath() );
+        }
+    }
+
+    /**
+     * @return where to stage an artifact in the build directory, under its
+     *         repository path, so artifacts with the same file name in
+     *         different groups never share a staged file.
+     */
+    static File stagedFile( String buildDir, Artifact artifact )
+    {
+        return new File( new File( buildDir, "ease-staging" ),
+                LAYOUT.pathOf( artifact ) );
+    }
+
+    /**
+     * @return a new temporary file in the directory of the destination file,
+     *         to be moved into place with {@link #moveIntoPlace(File, File)}.
+     */
+    static File tempFileFor( File destFile ) throws IOException
+    {
+        File dir = destFile.getAbsoluteFile()
+                .getParentFile();
+        if ( !dir.exists() )
+        {
+            FileUtils.mkdir( dir.getPath() );
+        }
+        return File.createTempFile( "." + destFile.getName() + ".", ".tmp",
+                dir );
+    }
+
+    /**
+     * Replaces the destination file with the temporary file in one atomic
+     * rename, so concurrent readers either see the old or the new content and
+     * never a partly written file. Falls back to a plain move on file systems
+     * which can't rename atomically.
+     */
+    static void moveIntoPlace( File tempFile, File destFile )
+            throws IOException
+    {
+        try
+        {
+            Files.move( tempFile.toPath(), destFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( AtomicMoveNotSupportedException amnse )
+        {
+            Files.move( tempFile.toPath(), destFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private static byte[] digest( byte[] content )
+            throws MojoExecutionException
+    {
+        MessageDigest digest = Checksums.newDigest( "SHA-1" );
+        digest.update( content );
+        return digest.digest();
+    }
+
+    static Journal openJournal( File file, String header, boolean resume,
+            Log log ) throws MojoExecutionException
+    {
+        try
+        {
+            Journal journal = Journal.open( file, header, resume );
+            if ( resume )
+            {
+                log.info( "Resuming from journal: " + file + ", "
+                          + journal.resumed()
+                          + " artifacts completed by an earlier run." );
+            }
+            return journal;
         }
         catch ( IOException ioe )
         {
-            throw new MojoExecutionException( "Could not write artifact list.",
-                    ioe );
+            throw new MojoExecutionException( "Could not open journal: "
+                                              + file, ioe );
+        }
+    }
+
+    static void closeJournal( Journal journal, Log log )
+    {
+        try
+        {
+            journal.close();
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Could not close journal.", ioe );
+        }
+    }
+
+    static void closeBundle( BundleRepository bundle, Log log )
+    {
+        try
+        {
+            bundle.close();
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Could not close bundle.", ioe );
+        }
+    }
+
+    /**
+     * @param threads number of threads, less than 1 means one per processor.
+     */
+    static ExecutorService newExecutor( int threads )
+    {
+        if ( threads < 1 )
+        {
+            threads = Runtime.getRuntime()
+                    .availableProcessors();
+        }
+        return Executors.newFixedThreadPool( threads );
+    }
+
+    /**
+     * Waits for a task submitted to an executor, unwrapping any failure into a
+     * MojoExecutionException.
+     */
+    static <T> T await( Future<T> future ) throws MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread()
+                    .interrupt();
+            throw new MojoExecutionException( "Interrupted.", ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) cause;
+            }
+            throw new MojoExecutionException( cause.getMessage(), cause );
         }
-        projectHelper.attachArtifact( project, "txt", "artifacts",
-                FileUtils.getFile( destFile ) );
-        log.info( "Successfully attached artifact list to the project." );
     }
 }
@@ -0,0 +1,333 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Exports all artifacts in an artifact list into a single bundle: a zip,
+ * tar.gz or tar file. The bundle holds the artifacts in the repository layout,
+ * the artifact list itself and a checksums.sha256 file in the format of
+ * sha256sum. A zip bundle can be used as the artifactRepositoryLocation of the
+ * attach and deploy goals as it is, an extracted bundle of any format can be
+ * checked and then used the same way.
+ * 
+ * Files are streamed into the bundle one after another. A tar.gz bundle is
+ * compressed on several threads, in independently compressed blocks.
+ * 
+ * @goal export
+ * @requiresProject true
+ * @threadSafe true
+ */
+public class ExportMojo extends AbstractMojo
+{
+    /**
+     * File system location of artifact list. A binary -artifacts.idx index
+     * next to the list is used instead of it when present. Lists referenced
+     * from the list are looked up in the artifact repository and exported as
+     * well.
+     * 
+     * @parameter expression="${artifactListLocation}"
+     * @required
+     */
+    private String artifactListLocation;
+
+    /**
+     * File system location of artifact repository to fetch artifacts from. It
+     * is not allowed to point artifactRepositoryLocation to the location of the
+     * local repository.
+     * 
+     * @parameter expression="${artifactRepositoryLocation}"
+     */
+    private String artifactRepositoryLocation;
+
+    /**
+     * The bundle to write. The format follows the extension: .zip, .tar.gz or
+     * .tgz, or .tar. Attach and deploy read a zip bundle as it is, tar bundles
+     * need to be extracted first.
+     * 
+     * @parameter expression="${ease.export.file}"
+     *            default-value="${project.build.directory}/${project.artifactId}-${project.version}-bundle.zip"
+     */
+    private File exportFile;
+
+    /**
+     * Number of threads used to compress a tar.gz bundle, 0 means one thread
+     * per processor.
+     * 
+     * @parameter expression="${ease.export.threads}" default-value="0"
+     */
+    private int compressionThreads;
+
+    /**
+     * Compression level, from 1 (fastest) to 9 (smallest).
+     * 
+     * @parameter expression="${ease.export.level}" default-value="6"
+     */
+    private int compressionLevel;
+
+    /**
+     * Verify artifact files against the size and checksum recorded in the
+     * artifact list, when the list has them.
+     * 
+     * @parameter expression="${verifyChecksums}" default-value="true"
+     */
+    private boolean verifyChecksums;
+
+    /**
+     * Write a JSON report of the time spent looking up artifacts and writing
+     * them into the bundle, with the latency per artifact, to
+     * ease-export-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    private boolean writeReport;
+
+    /**
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * Used to create artifact instances.
+     * 
+     * @component role="org.apache.maven.artifact.factory.ArtifactFactory"
+     * @required
+     * @readonly
+     */
+    protected ArtifactFactory artifactFactory;
+
+    /**
+     * Location of the local repository.
+     * 
+     * @parameter expression="${localRepository}"
+     * @readonly
+     * @required
+     */
+    protected ArtifactRepository localRepository;
+
+    private static final String CHECKSUMS = "checksums.sha256";
+
+    private static final String CHECKSUM_LABEL = "sha256";
+
+    private final DefaultRepositoryLayout layout = new DefaultRepositoryLayout();
+
+    private final StringBuilder checksums = new StringBuilder();
+
+    private long bytes = 0;
+
+    private TimingReport report = null;
+
+    @Override
+    public void execute() throws MojoExecutionException
+    {
+        String format = Bundle.format( exportFile.getName() );
+        if ( format == null )
+        {
+            throw new MojoExecutionException(
+                    "Unknown bundle format, use a .tar.gz, .tar or .zip file: "
+                            + exportFile );
+        }
+        ArtifactRepository artifactRepository = AttachMojo.setupArtifactRepository(
+                localRepository, artifactRepositoryLocation );
+        File artifactList = FileUtils.getFile( artifactListLocation );
+        getLog().info(
+                "Exporting artifacts from repository at: "
+                        + artifactRepository.getBasedir() + " to: "
+                        + exportFile );
+
+        report = new TimingReport( "export", project.getId() );
+        long start = System.currentTimeMillis();
+        int count = 0;
+        int threads = compressionThreads < 1 ? Runtime.getRuntime()
+                .availableProcessors() : compressionThreads;
+        ExecutorService executor = EaseHelper.newExecutor( threads );
+        ArtifactListWalker lists = new ArtifactListWalker( artifactList,
+                getLog() );
+        File tempFile = null;
+        try
+        {
+            tempFile = EaseHelper.tempFileFor( exportFile );
+            OutputStream out = new FileOutputStream( tempFile );
+            if ( "tar.gz".equals( format ) )
+            {
+                out = new ParallelGzipOutputStream( out, executor,
+                        threads * 2, compressionLevel );
+            }
+            Bundle bundle = "zip".equals( format ) ? Bundle.zip( out,
+                    compressionLevel ) : Bundle.tar( out );
+            try
+            {
+                add( bundle, artifactList.getName(), artifactList );
+                ArtifactListEntry entry;
+                while ( ( entry = next( lists ) ) != null )
+                {
+                    long artifactStart = TimingReport.now();
+                    Coordinates coordinates = entry.getCoordinates();
+                    Artifact artifact = AttachMojo.findExternalArtifact(
+                            artifactFactory.createArtifactWithClassifier(
+                                    coordinates.getGroupId(),
+                                    coordinates.getArtifactId(),
+                                    coordinates.getVersion(),
+                                    coordinates.getType(),
+                                    coordinates.getClassifier() ),
+                            artifactRepository );
+                    report.phase( "lookup", artifactStart );
+                    File file = artifact.getFile();
+                    long write = TimingReport.now();
+                    String checksum = add( bundle, layout.pathOf( artifact ),
+                            file );
+                    report.phase( "write", write, file.length() );
+                    if ( verifyChecksums && entry.getChecksum() != null )
+                    {
+                        verify( file, entry, checksum );
+                    }
+                    if ( entry.isReference() )
+                    {
+                        lists.push( file, verifyChecksums );
+                    }
+                    report.artifact( artifactStart, file.length() );
+                    count++;
+                }
+                byte[] checksumsFile = checksums.toString()
+                        .getBytes( "UTF-8" );
+                bundle.add( CHECKSUMS, checksumsFile.length,
+                        System.currentTimeMillis(), new ByteArrayInputStream(
+                                checksumsFile ) );
+            }
+            finally
+            {
+                bundle.close();
+            }
+            EaseHelper.moveIntoPlace( tempFile, exportFile );
+        }
+        catch ( IOException ioe )
+        {
+            throw new MojoExecutionException( "Could not write bundle: "
+                                              + exportFile, ioe );
+        }
+        finally
+        {
+            executor.shutdownNow();
+            lists.close();
+            if ( tempFile != null )
+            {
+                tempFile.delete();
+            }
+            if ( writeReport )
+            {
+                report.write( project.getBuild()
+                        .getDirectory(), getLog() );
+            }
+        }
+        long millis = Math.max( 1, System.currentTimeMillis() - start );
+        getLog().info(
+                "Exported " + count + " artifacts, " + bytes / 1024
+                        + " KiB into " + exportFile.length() / 1024
+                        + " KiB in " + millis + " ms." );
+    }
+
+    private ArtifactListEntry next( ArtifactListWalker lists )
+            throws MojoExecutionException
+    {
+        long start = TimingReport.now();
+        try
+        {
+            return lists.next();
+        }
+        finally
+        {
+            report.phase( "list", start );
+        }
+    }
+
+    /**
+     * Streams a file into the bundle and records its checksum.
+     * 
+     * @return the checksum of the file as written to the bundle, formatted as
+     *         sha256:hex.
+     */
+    private String add( Bundle bundle, String path, File file )
+            throws IOException, MojoExecutionException
+    {
+        MessageDigest digest = Checksums.newDigest( "SHA-256" );
+        InputStream in = new DigestInputStream( new FileInputStream( file ),
+                digest );
+        try
+        {
+            bundle.add( path, file.length(), file.lastModified(), in );
+        }
+        finally
+        {
+            in.close();
+        }
+        String hex = Checksums.hex( digest.digest() );
+        checksums.append( hex )
+                .append( "  " )
+                .append( path )
+                .append( '\n' );
+        bytes += file.length();
+        return CHECKSUM_LABEL + ':' + hex;
+    }
+
+    /**
+     * Checks a file against the list. Checksums in the format the bundle uses
+     * are compared with what was written to the bundle, others are computed
+     * by reading the file once more.
+     */
+    private static void verify( File file, ArtifactListEntry entry,
+            String checksum ) throws MojoExecutionException
+    {
+        if ( entry.getChecksum()
+                .startsWith( CHECKSUM_LABEL + ':' ) )
+        {
+            if ( file.length() != entry.getSize()
+                 || !checksum.equals( entry.getChecksum() ) )
+            {
+                throw new MojoExecutionException(
+                        "Artifact file does not match the artifact list: "
+                                + file );
+            }
+        }
+        else
+        {
+            AttachMojo.verifyChecksum( file, entry );
+        }
+    }
+}
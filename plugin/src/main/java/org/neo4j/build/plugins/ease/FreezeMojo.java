@@ -18,11 +18,19 @@
  */
 package org.neo4j.build.plugins.ease;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
@@ -62,31 +70,238 @@ public class FreezeMojo extends AbstractMojo
      */
     protected MavenProjectHelper projectHelper;
 
+    /**
+     * Also attach a binary index of the artifact list, as the -artifacts.idx
+     * artifact. Consumers prefer the index over the text list when present.
+     * 
+     * @parameter expression="${writeIndex}" default-value="false"
+     */
+    private boolean writeIndex;
+
+    /**
+     * Digest algorithm, like SHA-256 or SHA-1, used to record the size and
+     * checksum of every artifact file in the list. No checksums are recorded
+     * when not set.
+     * 
+     * @parameter expression="${checksumAlgorithm}"
+     */
+    private String checksumAlgorithm;
+
+    /**
+     * Number of threads used to compute checksums, 0 means one thread per
+     * processor.
+     * 
+     * @parameter expression="${checksumThreads}" default-value="0"
+     */
+    private int checksumThreads;
+
+    /**
+     * Also combine the artifact lists of all modules in the reactor into one
+     * list, written to reactorListFile once the last module has frozen. Each
+     * module still attaches its own list. The combined list can be attached
+     * directly, which spares a separate aggregate project when the release is
+     * exactly one reactor.
+     * 
+     * The list is written once every module binding freeze in its build, or
+     * every module when freeze is run from the command line, has frozen. In a
+     * serial build, the last of those modules writes it even when some before
+     * it did not freeze, with a warning. In a parallel build, it is only
+     * written when all of them freeze.
+     * 
+     * @parameter expression="${ease.freeze.reactor}" default-value="false"
+     */
+    private boolean reactorList;
+
+    /**
+     * Location of the combined artifact list of the reactor. A binary index
+     * is written next to it when writeIndex is set.
+     * 
+     * @parameter expression="${ease.freeze.reactorListFile}"
+     *            default-value="${session.executionRootDirectory}/target/ease-reactor-artifacts.txt"
+     */
+    private File reactorListFile;
+
+    /**
+     * Write a JSON report of the time spent collecting, checksumming and
+     * writing the list, with the per artifact latency, to
+     * ease-freeze-report.json in the build directory.
+     * 
+     * @parameter expression="${ease.report}" default-value="true"
+     */
+    private boolean writeReport;
+
+    /**
+     * @parameter default-value="${session}"
+     * @required
+     * @readonly
+     */
+    private MavenSession session;
+
+    /**
+     * @parameter default-value="${mojoExecution}"
+     * @required
+     * @readonly
+     */
+    private MojoExecution mojoExecution;
+
+    private final CoordinatesPool pool = new CoordinatesPool();
+
+    private TimingReport report = null;
+
     @Override
     public void execute() throws MojoExecutionException
     {
-        StringBuilder builder = new StringBuilder( 512 );
+        report = new TimingReport( "freeze", project.getId() );
+        try
+        {
+            freeze();
+        }
+        finally
+        {
+            if ( writeReport )
+            {
+                report.write( project.getBuild()
+                        .getDirectory(), getLog() );
+            }
+        }
+    }
+
+    private void freeze() throws MojoExecutionException
+    {
+        long collect = TimingReport.now();
+        List<Coordinates> coordinates = new ArrayList<Coordinates>();
+        List<File> files = new ArrayList<File>();
         Artifact artifact = project.getArtifact();
-        addArtifactCoordinates( builder, artifact );
+        coordinates.add( artifactCoordinates( artifact ) );
+        files.add( artifactFile( artifact ) );
         boolean pomWasAdded = "pom".equals( artifact.getType() );
         for ( Iterator i = attachedArtifacts.iterator(); i.hasNext(); )
         {
             Artifact attached = (Artifact) i.next();
-            addArtifactCoordinates( builder, attached );
+            coordinates.add( artifactCoordinates( attached ) );
+            files.add( artifactFile( attached ) );
             pomWasAdded = pomWasAdded || "pom".equals( artifact.getType() );
         }
         if ( !pomWasAdded )
         {
-            addArtifactCoordinates( builder, project.getGroupId(),
-                    project.getArtifactId(), "pom", project.getVersion(), null );
+            coordinates.add( pool.coordinates( project.getGroupId(),
+                    project.getArtifactId(), "pom", null, project.getVersion() ) );
+            files.add( project.getFile() );
+        }
+        report.phase( "collect", collect );
+
+        List<String> artifactList;
+        if ( checksumAlgorithm != null )
+        {
+            artifactList = addChecksums( coordinates, files,
+                    Checksums.label( checksumAlgorithm ) );
+        }
+        else
+        {
+            artifactList = new ArrayList<String>( coordinates.size() );
+            for ( Coordinates artifactCoordinates : coordinates )
+            {
+                artifactList.add( artifactCoordinates.toString() );
+                report.artifact( 0 );
+            }
+        }
+
+        long write = TimingReport.now();
+        EaseHelper.writeAndAttachArtifactList( artifactList, project,
+                projectHelper, getLog() );
+        if ( writeIndex )
+        {
+            EaseHelper.writeAndAttachArtifactIndex( artifactList, project,
+                    projectHelper, getLog() );
+        }
+        report.phase( "write", write );
+        if ( reactorList )
+        {
+            long reactor = TimingReport.now();
+            List<String> combinedList = ReactorArtifactList.forSession(
+                    session )
+                    .add( session, project, artifactList, mojoExecution,
+                            getLog() );
+            if ( combinedList != null )
+            {
+                writeReactorList( combinedList );
+            }
+            report.phase( "reactor", reactor );
+        }
+    }
+
+    private void writeReactorList( List<String> combinedList )
+            throws MojoExecutionException
+    {
+        EaseHelper.writeArtifactList( combinedList, reactorListFile, getLog() );
+        if ( writeIndex )
+        {
+            EaseHelper.writeArtifactIndex( combinedList,
+                    ArtifactListIndex.indexFileFor( reactorListFile ),
+                    getLog() );
         }
+        getLog().info(
+                "Wrote the artifact list of the reactor to: " + reactorListFile );
+    }
 
-        EaseHelper.writeAndAttachArtifactList( builder, project, projectHelper,
-                getLog() );
+    private List<String> addChecksums( List<Coordinates> coordinates,
+            List<File> files, final String checksumLabel )
+            throws MojoExecutionException
+    {
+        List<Future<String>> entries = new ArrayList<Future<String>>(
+                coordinates.size() );
+        ExecutorService executor = EaseHelper.newExecutor( checksumThreads );
+        try
+        {
+            for ( int i = 0; i < coordinates.size(); i++ )
+            {
+                final Coordinates artifactCoordinates = coordinates.get( i );
+                final File file = files.get( i );
+                entries.add( executor.submit( new Callable<String>()
+                {
+                    @Override
+                    public String call() throws IOException,
+                            MojoExecutionException
+                    {
+                        if ( file == null || !file.isFile() )
+                        {
+                            report.artifact( 0 );
+                            return artifactCoordinates.toString();
+                        }
+                        long start = TimingReport.now();
+                        String entry = new ArtifactListEntry(
+                                artifactCoordinates, file.length(),
+                                Checksums.checksum( file, checksumLabel ) ).toString();
+                        report.phase( "checksum", start, file.length() );
+                        report.artifact( start, file.length() );
+                        return entry;
+                    }
+                } ) );
+            }
+            List<String> artifactList = new ArrayList<String>(
+                    coordinates.size() );
+            for ( Future<String> entry : entries )
+            {
+                artifactList.add( EaseHelper.await( entry ) );
+            }
+            return artifactList;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
     }
 
-    private void addArtifactCoordinates( StringBuilder builder,
-            Artifact attached )
+    private File artifactFile( Artifact artifact )
+    {
+        if ( artifact.getFile() == null && "pom".equals( artifact.getType() ) )
+        {
+            return project.getFile();
+        }
+        return artifact.getFile();
+    }
+
+    private Coordinates artifactCoordinates( Artifact attached )
     {
         String groupId = attached.getGroupId();
         String artifactId = attached.getArtifactId();
@@ -103,25 +318,7 @@ public class FreezeMojo extends AbstractMojo
         {
             classifier = attached.getClassifier();
         }
-        addArtifactCoordinates( builder, groupId, artifactId, type, version,
-                classifier );
-    }
-
-    private void addArtifactCoordinates( StringBuilder builder, String groupId,
-            String artifactId, String type, String version, String classifier )
-    {
-        builder.append( groupId )
-                .append( ':' )
-                .append( artifactId )
-                .append( ':' )
-                .append( type )
-                .append( ':' );
-        if ( classifier != null )
-        {
-            builder.append( classifier )
-                    .append( ':' );
-        }
-        builder.append( version )
-                .append( '\n' );
+        return pool.coordinates( groupId, artifactId, type, classifier,
+                version );
     }
 }
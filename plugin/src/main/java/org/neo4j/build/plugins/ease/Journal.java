@@ -0,0 +1,205 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append only record of the artifacts a goal has completed, so a run which
+ * died halfway can be resumed without doing them again. Every line holds the
+ * coordinates of an artifact and a hash of what was done with it.
+ * 
+ * Records are written in batches, each forced to disk before the next one is
+ * started, which bounds the work lost in a crash to one batch. A line torn by
+ * a crash is ignored when the journal is read back. The first line of the
+ * journal holds a header describing what the records apply to, like the
+ * target repository; a journal with another header is not resumed.
+ */
+final class Journal implements Closeable
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final int BATCH_SIZE = 64;
+
+    private static final long BATCH_MILLIS = 1000;
+
+    private final Map<String, String> completed;
+
+    private final FileChannel channel;
+
+    private final StringBuilder pending = new StringBuilder();
+
+    private int pendingRecords = 0;
+
+    private long lastSync = System.currentTimeMillis();
+
+    private Journal( Map<String, String> completed, FileChannel channel )
+    {
+        this.completed = completed;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a journal, keeping the records of an earlier run when resuming
+     * and starting from scratch otherwise.
+     */
+    static Journal open( File file, String header, boolean resume )
+            throws IOException
+    {
+        Map<String, String> completed = new HashMap<String, String>();
+        if ( resume && file.isFile() && read( file, header, completed ) )
+        {
+            FileChannel channel = FileChannel.open( file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE );
+            channel.position( channel.size() );
+            Journal journal = new Journal( completed, channel );
+            if ( !journal.endsWithNewline() )
+            {
+                // end a line torn by a crash before appending to it
+                journal.pending.append( '\n' );
+            }
+            return journal;
+        }
+        File dir = file.getAbsoluteFile()
+                .getParentFile();
+        if ( !dir.exists() && !dir.mkdirs() )
+        {
+            throw new IOException( "Could not create directory: " + dir );
+        }
+        FileChannel channel = FileChannel.open( file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING );
+        Journal journal = new Journal( completed, channel );
+        journal.pending.append( header )
+                .append( '\n' );
+        journal.sync();
+        return journal;
+    }
+
+    private static boolean read( File file, String header,
+            Map<String, String> completed ) throws IOException
+    {
+        BufferedReader reader = Files.newBufferedReader( file.toPath(), UTF_8 );
+        try
+        {
+            if ( !header.equals( reader.readLine() ) )
+            {
+                return false;
+            }
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int separator = line.indexOf( ' ' );
+                if ( separator > 0 && separator < line.length() - 1 )
+                {
+                    completed.put( line.substring( 0, separator ),
+                            line.substring( separator + 1 ) );
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException
+    {
+        long size = channel.size();
+        if ( size == 0 )
+        {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate( 1 );
+        channel.read( last, size - 1 );
+        return last.get( 0 ) == '\n';
+    }
+
+    /**
+     * @return the number of records kept from an earlier run.
+     */
+    int resumed()
+    {
+        return completed.size();
+    }
+
+    /**
+     * @return true if an earlier run completed the artifact with this hash.
+     */
+    boolean isCompleted( String coordinates, String hash )
+    {
+        return hash.equals( completed.get( coordinates ) );
+    }
+
+    synchronized void record( String coordinates, String hash )
+            throws IOException
+    {
+        pending.append( coordinates )
+                .append( ' ' )
+                .append( hash )
+                .append( '\n' );
+        pendingRecords++;
+        if ( pendingRecords >= BATCH_SIZE
+             || System.currentTimeMillis() - lastSync >= BATCH_MILLIS )
+        {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( pending.toString()
+                .getBytes( UTF_8 ) );
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+        channel.force( false );
+        pending.setLength( 0 );
+        pendingRecords = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            if ( pending.length() > 0 )
+            {
+                sync();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
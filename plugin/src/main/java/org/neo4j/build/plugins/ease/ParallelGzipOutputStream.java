@@ -0,0 +1,184 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compresses a stream on several threads. The stream is cut into blocks
+ * which are compressed independently, each into a gzip member of its own, and
+ * written out in order. Concatenated members are a valid gzip file, which
+ * gunzip, tar and GZIPInputStream read as one stream. Compression is a bit
+ * worse than for a single member, as every block starts with an empty
+ * dictionary.
+ */
+final class ParallelGzipOutputStream extends OutputStream
+{
+    static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final int level;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    private int filled = 0;
+
+    private boolean written = false;
+
+    /**
+     * @param maxPending number of blocks compressed or waiting to be written
+     *            at most, which bounds the memory used.
+     * @param level deflate compression level, 1 to 9.
+     */
+    ParallelGzipOutputStream( OutputStream out, ExecutorService executor,
+            int maxPending, int level )
+    {
+        this.out = out;
+        this.executor = executor;
+        this.maxPending = Math.max( 1, maxPending );
+        this.level = level;
+    }
+
+    @Override
+    public void write( int b ) throws IOException
+    {
+        block[filled++] = (byte) b;
+        if ( filled == block.length )
+        {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write( byte[] bytes, int offset, int length )
+            throws IOException
+    {
+        while ( length > 0 )
+        {
+            int chunk = Math.min( length, block.length - filled );
+            System.arraycopy( bytes, offset, block, filled, chunk );
+            filled += chunk;
+            offset += chunk;
+            length -= chunk;
+            if ( filled == block.length )
+            {
+                submitBlock();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException
+    {
+        final byte[] data = block;
+        final int length = filled;
+        block = new byte[BLOCK_SIZE];
+        filled = 0;
+        written = true;
+        pending.add( executor.submit( new Callable<byte[]>()
+        {
+            @Override
+            public byte[] call() throws IOException
+            {
+                return compress( data, length );
+            }
+        } ) );
+        while ( pending.size() > maxPending )
+        {
+            writeNext();
+        }
+    }
+
+    private byte[] compress( byte[] data, int length ) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                length / 2 + 64 );
+        GZIPOutputStream gzip = new GZIPOutputStream( compressed, 64 * 1024 )
+        {
+            {
+                def.setLevel( level );
+            }
+        };
+        gzip.write( data, 0, length );
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    private void writeNext() throws IOException
+    {
+        Future<byte[]> next = pending.removeFirst();
+        try
+        {
+            out.write( next.get() );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread()
+                    .interrupt();
+            throw new InterruptedIOException( "Interrupted while compressing." );
+        }
+        catch ( ExecutionException ee )
+        {
+            throw new IOException( "Could not compress.", ee.getCause() );
+        }
+    }
+
+    /**
+     * Compresses and writes the last block, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if ( filled > 0 || !written )
+            {
+                submitBlock();
+            }
+            while ( !pending.isEmpty() )
+            {
+                writeNext();
+            }
+        }
+        finally
+        {
+            for ( Future<byte[]> abandoned : pending )
+            {
+                abandoned.cancel( true );
+            }
+            out.close();
+        }
+    }
+}
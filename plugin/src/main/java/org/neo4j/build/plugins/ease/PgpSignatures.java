@@ -0,0 +1,136 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.bouncycastle.openpgp.PGPCompressedData;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
+
+/**
+ * Verifies detached OpenPGP signatures in process, against the public keys of
+ * a local keyring file. Instances are safe to use from several threads.
+ */
+class PgpSignatures
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PGPPublicKeyRingCollection publicKeys;
+
+    private PgpSignatures( PGPPublicKeyRingCollection publicKeys )
+    {
+        this.publicKeys = publicKeys;
+    }
+
+    static PgpSignatures loadPublicKeyring( File keyring ) throws IOException,
+            PGPException
+    {
+        InputStream in = PGPUtil.getDecoderStream( new BufferedInputStream(
+                new FileInputStream( keyring ) ) );
+        try
+        {
+            return new PgpSignatures( new PGPPublicKeyRingCollection( in,
+                    new BcKeyFingerprintCalculator() ) );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @return null if the signature is valid for the file, otherwise the
+     *         reason why it isn't.
+     */
+    String verify( File file, File signatureFile ) throws IOException,
+            PGPException
+    {
+        PGPSignature signature = readSignature( signatureFile );
+        if ( signature == null )
+        {
+            return "no signature found in " + signatureFile;
+        }
+        PGPPublicKey key = publicKeys.getPublicKey( signature.getKeyID() );
+        if ( key == null )
+        {
+            return "unknown key " + Long.toHexString( signature.getKeyID() )
+                   + " for " + signatureFile;
+        }
+        signature.init( new BcPGPContentVerifierBuilderProvider(), key );
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 )
+            {
+                signature.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        if ( !signature.verify() )
+        {
+            return "bad signature " + signatureFile;
+        }
+        return null;
+    }
+
+    private static PGPSignature readSignature( File signatureFile )
+            throws IOException, PGPException
+    {
+        InputStream in = PGPUtil.getDecoderStream( new BufferedInputStream(
+                new FileInputStream( signatureFile ) ) );
+        try
+        {
+            BcPGPObjectFactory factory = new BcPGPObjectFactory( in );
+            Object object = factory.nextObject();
+            if ( object instanceof PGPCompressedData )
+            {
+                factory = new BcPGPObjectFactory(
+                        ( (PGPCompressedData) object ).getDataStream() );
+                object = factory.nextObject();
+            }
+            if ( object instanceof PGPSignatureList
+                 && !( (PGPSignatureList) object ).isEmpty() )
+            {
+                return ( (PGPSignatureList) object ).get( 0 );
+            }
+            return null;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
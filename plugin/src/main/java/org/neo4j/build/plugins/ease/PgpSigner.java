@@ -0,0 +1,252 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.SignatureSubpacketTags;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketVector;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+
+/**
+ * Creates ASCII armored detached signatures in process, like
+ * <code>gpg --armor --detach-sign</code> does, using a key from a local secret
+ * keyring file. Instances are safe to use from several threads.
+ */
+class PgpSigner
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PGPPrivateKey privateKey;
+
+    private final int keyAlgorithm;
+
+    private PgpSigner( PGPPrivateKey privateKey, int keyAlgorithm )
+    {
+        this.privateKey = privateKey;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    /**
+     * @param keyname key id or part of a user id of the key to use, or null to
+     *            use the first signing key in the keyring.
+     */
+    static PgpSigner load( File secretKeyring, String keyname,
+            String passphrase ) throws IOException, PGPException
+    {
+        PGPSecretKeyRingCollection keyRings;
+        InputStream in = PGPUtil.getDecoderStream( new BufferedInputStream(
+                new FileInputStream( secretKeyring ) ) );
+        try
+        {
+            keyRings = new PGPSecretKeyRingCollection( in,
+                    new BcKeyFingerprintCalculator() );
+        }
+        finally
+        {
+            in.close();
+        }
+        PGPSecretKey secretKey = findSigningKey( keyRings, keyname );
+        if ( secretKey == null )
+        {
+            throw new PGPException( "No signing key "
+                                    + ( keyname == null ? "" : keyname + " " )
+                                    + "found in: " + secretKeyring );
+        }
+        char[] password = passphrase == null ? new char[0]
+                : passphrase.toCharArray();
+        PGPPrivateKey privateKey = secretKey.extractPrivateKey( new BcPBESecretKeyDecryptorBuilder(
+                new BcPGPDigestCalculatorProvider() ).build( password ) );
+        return new PgpSigner( privateKey, secretKey.getPublicKey()
+                .getAlgorithm() );
+    }
+
+    private static PGPSecretKey findSigningKey(
+            PGPSecretKeyRingCollection keyRings, String keyname )
+    {
+        String name = keyname == null ? null : keyname.toLowerCase(
+                Locale.ENGLISH )
+                .replaceFirst( "^0x", "" );
+        Iterator<PGPSecretKeyRing> rings = keyRings.getKeyRings();
+        while ( rings.hasNext() )
+        {
+            PGPSecretKeyRing ring = rings.next();
+            PGPPublicKey primaryKey = ring.getPublicKey();
+            if ( isRevoked( primaryKey ) )
+            {
+                continue;
+            }
+            long primaryKeyId = primaryKey.getKeyID();
+            Iterator<PGPSecretKey> keys = ring.getSecretKeys();
+            while ( keys.hasNext() )
+            {
+                PGPSecretKey key = keys.next();
+                if ( !isRevoked( key.getPublicKey() )
+                     && canSignData( key, primaryKeyId )
+                     && !key.isPrivateKeyEmpty()
+                     && ( name == null || matches( key, primaryKey, name ) ) )
+                {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A primary key carrying a key revocation, or a subkey carrying a subkey
+     * revocation, is never used, whoever issued the revocation.
+     */
+    private static boolean isRevoked( PGPPublicKey key )
+    {
+        int revocation = key.isMasterKey() ? PGPSignature.KEY_REVOCATION
+                : PGPSignature.SUBKEY_REVOCATION;
+        Iterator<?> signatures = key.getSignaturesOfType( revocation );
+        return signatures.hasNext();
+    }
+
+    /**
+     * Decides from the key flags in the self-signatures of a key, so keys
+     * which are only meant for certification or encryption are never used,
+     * even when their algorithm could sign. Keys without key flags, like
+     * old v3 keys, are judged by their algorithm.
+     */
+    private static boolean canSignData( PGPSecretKey key, long primaryKeyId )
+    {
+        boolean hasKeyFlags = false;
+        Iterator<?> signatures = key.getPublicKey()
+                .getSignatures();
+        while ( signatures.hasNext() )
+        {
+            PGPSignature signature = (PGPSignature) signatures.next();
+            if ( signature.getKeyID() != primaryKeyId
+                 || signature.getSignatureType() == PGPSignature.CERTIFICATION_REVOCATION )
+            {
+                continue;
+            }
+            PGPSignatureSubpacketVector subpackets = signature.getHashedSubPackets();
+            if ( subpackets != null
+                 && subpackets.getSubpacket( SignatureSubpacketTags.KEY_FLAGS ) != null )
+            {
+                hasKeyFlags = true;
+                if ( ( subpackets.getKeyFlags() & KeyFlags.SIGN_DATA ) != 0 )
+                {
+                    return true;
+                }
+            }
+        }
+        return !hasKeyFlags && key.isSigningKey();
+    }
+
+    /**
+     * Subkeys have no user ids of their own, so they are matched by the user
+     * ids of the primary key, like gpg does.
+     */
+    private static boolean matches( PGPSecretKey key, PGPPublicKey primaryKey,
+            String name )
+    {
+        if ( String.format( "%016X", key.getKeyID() )
+                .toLowerCase( Locale.ENGLISH )
+                .endsWith( name ) )
+        {
+            return true;
+        }
+        Iterator<String> userIds = primaryKey.getUserIDs();
+        while ( userIds.hasNext() )
+        {
+            if ( userIds.next()
+                    .toLowerCase( Locale.ENGLISH )
+                    .contains( name ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Signs a file, writing the signature to a temporary file first so a
+     * failure never leaves a partial signature behind.
+     */
+    void sign( File file, File signatureFile ) throws IOException,
+            PGPException
+    {
+        PGPSignatureGenerator generator = new PGPSignatureGenerator(
+                new BcPGPContentSignerBuilder( keyAlgorithm,
+                        HashAlgorithmTags.SHA256 ) );
+        generator.init( PGPSignature.BINARY_DOCUMENT, privateKey );
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 )
+            {
+                generator.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        File tempFile = EaseHelper.tempFileFor( signatureFile );
+        try
+        {
+            ArmoredOutputStream out = new ArmoredOutputStream(
+                    new FileOutputStream( tempFile ) );
+            try
+            {
+                generator.generate()
+                        .encode( out );
+            }
+            finally
+            {
+                out.close();
+            }
+            EaseHelper.moveIntoPlace( tempFile, signatureFile );
+        }
+        finally
+        {
+            Files.deleteIfExists( tempFile.toPath() );
+        }
+    }
+}
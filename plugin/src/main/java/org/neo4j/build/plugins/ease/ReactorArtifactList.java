@@ -0,0 +1,173 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Collects the artifact lists frozen by the modules of a reactor, to combine
+ * them into one list for the whole reactor. One instance is held weakly per
+ * build, keyed by the execution request: parallel builds give every module a
+ * clone of the session, but the clones share the request.
+ */
+final class ReactorArtifactList
+{
+    private static final Map<MavenExecutionRequest, ReactorArtifactList> SESSIONS = new WeakHashMap<MavenExecutionRequest, ReactorArtifactList>();
+
+    private final Map<MavenProject, List<String>> lists = new HashMap<MavenProject, List<String>>();
+
+    private boolean combined = false;
+
+    private ReactorArtifactList()
+    {
+    }
+
+    static ReactorArtifactList forSession( MavenSession session )
+    {
+        synchronized ( SESSIONS )
+        {
+            ReactorArtifactList reactorList = SESSIONS.get( session.getRequest() );
+            if ( reactorList == null )
+            {
+                reactorList = new ReactorArtifactList();
+                SESSIONS.put( session.getRequest(), reactorList );
+            }
+            return reactorList;
+        }
+    }
+
+    /**
+     * Records the artifact list of a module.
+     * 
+     * @param execution the freeze execution recording the list, used to tell
+     *            which modules of the reactor freeze.
+     * @return the combined list of all recorded modules in reactor order, when
+     *         this was the last module to record its list, or null.
+     */
+    synchronized List<String> add( MavenSession session, MavenProject project,
+            List<String> artifactList, MojoExecution execution, Log log )
+    {
+        lists.put( project, artifactList );
+        if ( combined )
+        {
+            return null;
+        }
+        List<MavenProject> projects = session.getProjects();
+        List<MavenProject> freezing = freezingProjects( projects, execution );
+        if ( !lists.keySet()
+                .containsAll( freezing ) )
+        {
+            if ( session.isParallel()
+                 || !project.equals( freezing.get( freezing.size() - 1 ) ) )
+            {
+                log.info( "Waiting for "
+                          + ( freezing.size() - lists.size() )
+                          + " more module(s) to freeze before combining the artifact lists of the reactor." );
+                return null;
+            }
+            // the last module binding freeze in a serial build, yet some
+            // modules before it did not freeze
+            List<String> missing = new ArrayList<String>();
+            for ( MavenProject freezingProject : freezing )
+            {
+                if ( !lists.containsKey( freezingProject ) )
+                {
+                    missing.add( freezingProject.getId() );
+                }
+            }
+            log.warn( "Combining the artifact lists of the reactor without the modules which did not freeze: "
+                      + missing );
+        }
+        combined = true;
+        List<String> combinedList = new ArrayList<String>();
+        for ( MavenProject reactorProject : projects )
+        {
+            List<String> moduleList = lists.get( reactorProject );
+            if ( moduleList != null )
+            {
+                combinedList.addAll( moduleList );
+            }
+        }
+        return combinedList;
+    }
+
+    /**
+     * The modules of the reactor which run freeze: all of them when it was
+     * invoked from the command line, otherwise the modules binding it in
+     * their build, in reactor order. Always includes modules which already
+     * recorded their list.
+     */
+    private List<MavenProject> freezingProjects( List<MavenProject> projects,
+            MojoExecution execution )
+    {
+        if ( execution.getSource() == MojoExecution.Source.CLI )
+        {
+            return projects;
+        }
+        PluginDescriptor plugin = execution.getMojoDescriptor()
+                .getPluginDescriptor();
+        List<MavenProject> freezing = new ArrayList<MavenProject>();
+        for ( MavenProject project : projects )
+        {
+            if ( lists.containsKey( project )
+                 || bindsGoal( project, plugin, execution.getGoal() ) )
+            {
+                freezing.add( project );
+            }
+        }
+        return freezing;
+    }
+
+    private static boolean bindsGoal( MavenProject project,
+            PluginDescriptor plugin, String goal )
+    {
+        for ( Plugin buildPlugin : project.getBuildPlugins() )
+        {
+            if ( !plugin.getGroupId()
+                    .equals( buildPlugin.getGroupId() )
+                 || !plugin.getArtifactId()
+                         .equals( buildPlugin.getArtifactId() ) )
+            {
+                continue;
+            }
+            for ( PluginExecution execution : buildPlugin.getExecutions() )
+            {
+                if ( execution.getGoals()
+                        .contains( goal ) && !"none".equals( execution.getPhase() ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Puts files into a remote repository, at paths relative to the repository
+ * url. Supports file: urls and http: or https: urls taking PUT requests, like
+ * the hosted repositories of common repository managers. Instances are used
+ * by several upload threads at once.
+ */
+abstract class RepositoryUploader
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static RepositoryUploader forUrl( String url, String username,
+            String password ) throws MojoExecutionException
+    {
+        String base = url.endsWith( "/" ) ? url.substring( 0,
+                url.length() - 1 ) : url;
+        String scheme = base.substring( 0, Math.max( 0, base.indexOf( ':' ) ) )
+                .toLowerCase( Locale.ENGLISH );
+        if ( "file".equals( scheme ) )
+        {
+            try
+            {
+                return new FileUploader( new File( new URI( base ) ) );
+            }
+            catch ( URISyntaxException use )
+            {
+                throw new MojoExecutionException(
+                        "Could not parse repository url: " + url, use );
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                throw new MojoExecutionException(
+                        "Could not parse repository url: " + url, iae );
+            }
+        }
+        if ( "http".equals( scheme ) || "https".equals( scheme ) )
+        {
+            String authorization = null;
+            if ( username != null )
+            {
+                byte[] credentials = ( username + ':' + ( password == null ? ""
+                        : password ) ).getBytes( Charset.forName( "UTF-8" ) );
+                authorization = "Basic " + Base64.toBase64String( credentials );
+            }
+            return new HttpUploader( base, authorization );
+        }
+        throw new MojoExecutionException( "Unsupported repository url: " + url
+                                          + ", use a file: or http: url." );
+    }
+
+    abstract void upload( File file, String path ) throws IOException;
+
+    abstract void upload( byte[] content, String path ) throws IOException;
+
+    /**
+     * Copies files into a repository directory. Every file is moved into
+     * place in one rename, so readers of the repository never see a partly
+     * written file.
+     */
+    private static class FileUploader extends RepositoryUploader
+    {
+        private final File basedir;
+
+        FileUploader( File basedir )
+        {
+            this.basedir = basedir;
+        }
+
+        @Override
+        void upload( File file, String path ) throws IOException
+        {
+            File destination = new File( basedir, path );
+            File tempFile = EaseHelper.tempFileFor( destination );
+            try
+            {
+                Files.copy( file.toPath(), tempFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING );
+                EaseHelper.moveIntoPlace( tempFile, destination );
+            }
+            finally
+            {
+                Files.deleteIfExists( tempFile.toPath() );
+            }
+        }
+
+        @Override
+        void upload( byte[] content, String path ) throws IOException
+        {
+            File destination = new File( basedir, path );
+            File tempFile = EaseHelper.tempFileFor( destination );
+            try
+            {
+                Files.write( tempFile.toPath(), content );
+                EaseHelper.moveIntoPlace( tempFile, destination );
+            }
+            finally
+            {
+                Files.deleteIfExists( tempFile.toPath() );
+            }
+        }
+    }
+
+    /**
+     * PUTs files to a repository over http. Responses are read to the end,
+     * so the connections are kept alive and reused by the next uploads.
+     */
+    private static class HttpUploader extends RepositoryUploader
+    {
+        private final String base;
+
+        private final String authorization;
+
+        HttpUploader( String base, String authorization )
+        {
+            this.base = base;
+            this.authorization = authorization;
+        }
+
+        @Override
+        void upload( File file, String path ) throws IOException
+        {
+            InputStream in = new FileInputStream( file );
+            try
+            {
+                put( in, file.length(), path );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        @Override
+        void upload( byte[] content, String path ) throws IOException
+        {
+            put( new ByteArrayInputStream( content ), content.length, path );
+        }
+
+        private void put( InputStream in, long length, String path )
+                throws IOException
+        {
+            URL url = new URL( base + '/' + path );
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod( "PUT" );
+            connection.setDoOutput( true );
+            connection.setFixedLengthStreamingMode( length );
+            connection.setRequestProperty( "Content-Type",
+                    "application/octet-stream" );
+            if ( authorization != null )
+            {
+                connection.setRequestProperty( "Authorization", authorization );
+            }
+            OutputStream out = connection.getOutputStream();
+            try
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ( ( read = in.read( buffer ) ) != -1 )
+                {
+                    out.write( buffer, 0, read );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            drain( status < 400 ? connection.getInputStream()
+                    : connection.getErrorStream() );
+            if ( status < 200 || status >= 300 )
+            {
+                throw new IOException( "Could not upload to: " + url
+                                       + ", server replied " + status + " "
+                                       + connection.getResponseMessage() );
+            }
+        }
+
+        private static void drain( InputStream in ) throws IOException
+        {
+            if ( in == null )
+            {
+                return;
+            }
+            try
+            {
+                byte[] buffer = new byte[1024];
+                while ( in.read( buffer ) != -1 )
+                {
+                    // read to the end to keep the connection alive
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Remembers what has been copied into the build directory, so staging can
+ * skip files that are already up to date. For every artifact, the index holds
+ * the file size, the modification times of the source and the staged copy,
+ * and the checksum of the content when the artifact list had one.
+ * 
+ * When the modification times still match, the staged copy is current
+ * without reading any file. When they don't, for example in a workspace
+ * restored from a cache, the checksums decide, so only reads are needed to
+ * avoid rewriting an unchanged file, and a stale file is never kept. Files are
+ * only hashed then, never while copying.
+ */
+class StagingIndex
+{
+    private static final String CHECKSUM_LABEL = "sha256";
+
+    private static final String NO_CHECKSUM = "-";
+
+    private final File indexFile;
+
+    private final Map<String, Record> previous = new HashMap<String, Record>();
+
+    private final Map<String, Record> current = new ConcurrentHashMap<String, Record>();
+
+    private StagingIndex( File indexFile )
+    {
+        this.indexFile = indexFile;
+    }
+
+    static StagingIndex load( File indexFile ) throws IOException
+    {
+        StagingIndex index = new StagingIndex( indexFile );
+        if ( indexFile.isFile() )
+        {
+            Properties properties = new Properties();
+            InputStream in = new FileInputStream( indexFile );
+            try
+            {
+                properties.load( in );
+            }
+            finally
+            {
+                in.close();
+            }
+            for ( String key : properties.stringPropertyNames() )
+            {
+                Record record = Record.parse( properties.getProperty( key ) );
+                if ( record != null )
+                {
+                    index.previous.put( key, record );
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Copies the source file to the destination, unless the destination is
+     * known to already have the same content.
+     * 
+     * @param key the coordinates of the artifact.
+     * @param knownChecksum checksum of the source from the artifact list, or
+     *            null.
+     */
+    void stage( String key, File source, File destination,
+            String knownChecksum ) throws IOException, MojoExecutionException
+    {
+        // the list checksum has already been verified against the source
+        if ( knownChecksum != null
+             && !knownChecksum.startsWith( CHECKSUM_LABEL + ':' ) )
+        {
+            knownChecksum = null;
+        }
+        Record record = previous.get( key );
+        if ( record != null )
+        {
+            String checksum = currentChecksum( record, source, destination,
+                    knownChecksum );
+            if ( checksum != null )
+            {
+                current.put( key, new Record( record.size,
+                        source.lastModified(), destination.lastModified(),
+                        checksum ) );
+                return;
+            }
+        }
+        StagingMode.copy( source, destination );
+        current.put( key, new Record( destination.length(),
+                source.lastModified(), destination.lastModified(),
+                knownChecksum != null ? knownChecksum : NO_CHECKSUM ) );
+    }
+
+    /**
+     * @return the checksum to record for a staged copy which is current, or
+     *         null if it is not.
+     */
+    private static String currentChecksum( Record record, File source,
+            File destination, String knownChecksum ) throws IOException,
+            MojoExecutionException
+    {
+        if ( !destination.isFile()
+             || Files.isSymbolicLink( destination.toPath() )
+             || destination.length() != record.size
+             || source.length() != record.size )
+        {
+            return null;
+        }
+        if ( source.lastModified() == record.sourceModified
+             && destination.lastModified() == record.destinationModified )
+        {
+            return record.checksum;
+        }
+        String sourceChecksum = knownChecksum != null ? knownChecksum
+                : Checksums.checksum( source, CHECKSUM_LABEL );
+        if ( !NO_CHECKSUM.equals( record.checksum )
+             && !record.checksum.equals( sourceChecksum ) )
+        {
+            return null;
+        }
+        if ( !sourceChecksum.equals( Checksums.checksum( destination,
+                CHECKSUM_LABEL ) ) )
+        {
+            return null;
+        }
+        return sourceChecksum;
+    }
+
+    /**
+     * Writes the index, keeping only the artifacts staged in this run.
+     */
+    void save() throws IOException
+    {
+        Properties properties = new Properties();
+        for ( Map.Entry<String, Record> entry : current.entrySet() )
+        {
+            properties.setProperty( entry.getKey(), entry.getValue()
+                    .toString() );
+        }
+        File tempFile = EaseHelper.tempFileFor( indexFile );
+        try
+        {
+            OutputStream out = new FileOutputStream( tempFile );
+            try
+            {
+                properties.store( out, "ease staging index" );
+            }
+            finally
+            {
+                out.close();
+            }
+            EaseHelper.moveIntoPlace( tempFile, indexFile );
+        }
+        finally
+        {
+            Files.deleteIfExists( tempFile.toPath() );
+        }
+    }
+
+    private static class Record
+    {
+        private final long size;
+        private final long sourceModified;
+        private final long destinationModified;
+        private final String checksum;
+
+        Record( long size, long sourceModified, long destinationModified,
+                String checksum )
+        {
+            this.size = size;
+            this.sourceModified = sourceModified;
+            this.destinationModified = destinationModified;
+            this.checksum = checksum;
+        }
+
+        static Record parse( String value )
+        {
+            String[] fields = value.split( " " );
+            if ( fields.length != 4 )
+            {
+                return null;
+            }
+            try
+            {
+                return new Record( Long.parseLong( fields[0] ),
+                        Long.parseLong( fields[1] ),
+                        Long.parseLong( fields[2] ), fields[3] );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return size + " " + sourceModified + " " + destinationModified
+                   + " " + checksum;
+        }
+    }
+}
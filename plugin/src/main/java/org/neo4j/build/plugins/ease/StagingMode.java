@@ -0,0 +1,206 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * How artifact files are staged from the artifact repository into the build
+ * directory before being attached to the project.
+ */
+enum StagingMode
+{
+    /**
+     * Copy the file, unless the staged copy is already up to date.
+     */
+    COPY
+    {
+        @Override
+        File stage( File source, File destination ) throws IOException
+        {
+            if ( Files.isSymbolicLink( destination.toPath() )
+                 || isLinkTo( source, destination )
+                 || destination.lastModified() < source.lastModified() )
+            {
+                copy( source, destination );
+            }
+            return destination;
+        }
+    },
+    /**
+     * Create a hard link to the file, which requires the build directory to be
+     * on the same file system as the artifact repository.
+     */
+    HARDLINK
+    {
+        @Override
+        File stage( File source, File destination ) throws IOException
+        {
+            if ( !isLinkTo( source, destination ) )
+            {
+                try
+                {
+                    Files.deleteIfExists( destination.toPath() );
+                    Files.createLink( destination.toPath(), source.toPath() );
+                }
+                catch ( IOException ioe )
+                {
+                    copy( source, destination );
+                }
+                catch ( UnsupportedOperationException uoe )
+                {
+                    copy( source, destination );
+                }
+            }
+            return destination;
+        }
+    },
+    /**
+     * Create a symbolic link to the file.
+     */
+    SYMLINK
+    {
+        @Override
+        File stage( File source, File destination ) throws IOException
+        {
+            if ( !isLinkTo( source, destination ) )
+            {
+                try
+                {
+                    Files.deleteIfExists( destination.toPath() );
+                    Files.createSymbolicLink( destination.toPath(),
+                            source.getAbsoluteFile()
+                                    .toPath() );
+                }
+                catch ( IOException ioe )
+                {
+                    copy( source, destination );
+                }
+                catch ( UnsupportedOperationException uoe )
+                {
+                    copy( source, destination );
+                }
+            }
+            return destination;
+        }
+    },
+    /**
+     * Attach the file in place in the artifact repository.
+     */
+    NONE
+    {
+        @Override
+        File stage( File source, File destination )
+        {
+            return source;
+        }
+    };
+
+    /**
+     * @return true if this mode stages a copy of the file.
+     */
+    boolean isCopy()
+    {
+        return this == COPY;
+    }
+
+    /**
+     * Stages a file.
+     * 
+     * @return the file to attach to the project.
+     */
+    abstract File stage( File source, File destination ) throws IOException;
+
+    /**
+     * Java has no API for copy-on-write clones, so reflink is taken as an
+     * alias of copy, with a warning.
+     */
+    static StagingMode fromString( String mode, Log log )
+            throws MojoExecutionException
+    {
+        if ( "reflink".equalsIgnoreCase( mode ) )
+        {
+            log.warn( "The reflink staging mode is not supported, copying the files instead." );
+            return COPY;
+        }
+        try
+        {
+            return valueOf( mode.toUpperCase( Locale.ENGLISH ) );
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            throw new MojoExecutionException( "Unknown staging mode: " + mode
+                                              + ", use one of copy, hardlink,"
+                                              + " symlink or none." );
+        }
+    }
+
+    /**
+     * Check if the destination is a symbolic or hard link to the source, in
+     * which case writing to it would change the source.
+     */
+    private static boolean isLinkTo( File source, File destination )
+            throws IOException
+    {
+        Path destinationPath = destination.toPath();
+        return Files.exists( destinationPath )
+               && Files.isSameFile( source.toPath(), destinationPath );
+    }
+
+    static void copy( File source, File destination ) throws IOException
+    {
+        Files.deleteIfExists( destination.toPath() );
+        FileInputStream in = new FileInputStream( source );
+        try
+        {
+            FileOutputStream out = new FileOutputStream( destination );
+            try
+            {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while ( position < size )
+                {
+                    position += inChannel.transferTo( position,
+                            size - position, outChannel );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        destination.setLastModified( source.lastModified() );
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects where a goal spends its time: the time and bytes of each phase,
+ * and the latency and size of each artifact handled. Written as a JSON report when the
+ * goal is done. Artifact latencies are only reported when some were timed.
+ * 
+ * Phases which run on several threads sum the time of all threads, so they
+ * can add up to more than the wall time of the goal. Safe for use by several
+ * threads.
+ */
+final class TimingReport
+{
+    private final String goal;
+
+    private final String project;
+
+    private final long started = System.nanoTime();
+
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+
+    private long[] latencies = new long[64];
+
+    private int timedArtifacts = 0;
+
+    private int artifacts = 0;
+
+    private long bytes = 0;
+
+    TimingReport( String goal, String project )
+    {
+        this.goal = goal;
+        this.project = project;
+    }
+
+    /**
+     * @return the start time of a phase or an artifact.
+     */
+    static long now()
+    {
+        return System.nanoTime();
+    }
+
+    void phase( String name, long start )
+    {
+        phase( name, start, 0 );
+    }
+
+    /**
+     * Records a phase started at start, which read, copied or wrote a number
+     * of bytes.
+     */
+    synchronized void phase( String name, long start, long phaseBytes )
+    {
+        long nanos = System.nanoTime() - start;
+        Phase phase = phases.get( name );
+        if ( phase == null )
+        {
+            phase = new Phase();
+            phases.put( name, phase );
+        }
+        phase.count++;
+        phase.nanos += nanos;
+        phase.bytes += phaseBytes;
+    }
+
+    /**
+     * Records an artifact of a number of bytes, handled from start until now.
+     */
+    synchronized void artifact( long start, long artifactBytes )
+    {
+        artifact( artifactBytes );
+        if ( timedArtifacts == latencies.length )
+        {
+            latencies = Arrays.copyOf( latencies, timedArtifacts * 2 );
+        }
+        latencies[timedArtifacts++] = System.nanoTime() - start;
+    }
+
+    /**
+     * Counts an artifact of a number of bytes without a latency, for work too
+     * small to time meaningfully.
+     */
+    synchronized void artifact( long artifactBytes )
+    {
+        artifacts++;
+        bytes += artifactBytes;
+    }
+
+    /**
+     * Writes the report as ease-[goal]-report.json in a directory. A report
+     * which can not be written only gives a warning.
+     */
+    void write( String directory, Log log )
+    {
+        File file = new File( directory, "ease-" + goal + "-report.json" );
+        try
+        {
+            file.getParentFile()
+                    .mkdirs();
+            File tempFile = EaseHelper.tempFileFor( file );
+            try
+            {
+                Writer writer = new OutputStreamWriter(
+                        new FileOutputStream( tempFile ), "UTF-8" );
+                try
+                {
+                    writer.write( toJson() );
+                }
+                finally
+                {
+                    writer.close();
+                }
+                EaseHelper.moveIntoPlace( tempFile, file );
+            }
+            finally
+            {
+                tempFile.delete();
+            }
+            log.info( "Wrote timing report to: " + file );
+        }
+        catch ( IOException ioe )
+        {
+            log.warn( "Could not write timing report: " + file, ioe );
+        }
+    }
+
+    synchronized String toJson()
+    {
+        long wall = System.nanoTime() - started;
+        long[] sorted = Arrays.copyOf( latencies, timedArtifacts );
+        Arrays.sort( sorted );
+        StringBuilder json = new StringBuilder( 512 );
+        json.append( "{\n  \"goal\": " );
+        string( json, goal );
+        json.append( ",\n  \"project\": " );
+        string( json, project );
+        json.append( ",\n  \"millis\": " )
+                .append( millis( wall ) )
+                .append( ",\n  \"artifacts\": " )
+                .append( artifacts )
+                .append( ",\n  \"bytes\": " )
+                .append( bytes )
+                .append( ",\n  \"artifactsPerSecond\": " )
+                .append( perSecond( artifacts, wall ) )
+                .append( ",\n  \"bytesPerSecond\": " )
+                .append( perSecond( bytes, wall ) );
+        if ( sorted.length > 0 )
+        {
+            json.append( ",\n  \"artifactMillis\": { \"p50\": " )
+                    .append( millis( percentile( sorted, 50 ) ) )
+                    .append( ", \"p99\": " )
+                    .append( millis( percentile( sorted, 99 ) ) )
+                    .append( ", \"max\": " )
+                    .append( millis( sorted[sorted.length - 1] ) )
+                    .append( " }" );
+        }
+        json.append( ",\n  \"phases\": {" );
+        String separator = "\n";
+        for ( Map.Entry<String, Phase> entry : phases.entrySet() )
+        {
+            Phase phase = entry.getValue();
+            json.append( separator )
+                    .append( "    " );
+            string( json, entry.getKey() );
+            json.append( ": { \"count\": " )
+                    .append( phase.count )
+                    .append( ", \"millis\": " )
+                    .append( millis( phase.nanos ) )
+                    .append( ", \"bytes\": " )
+                    .append( phase.bytes )
+                    .append( " }" );
+            separator = ",\n";
+        }
+        json.append( "\n  }\n}\n" );
+        return json.toString();
+    }
+
+    /**
+     * Nearest rank percentile of sorted values.
+     */
+    private static long percentile( long[] sorted, int percent )
+    {
+        int rank = (int) Math.ceil( percent / 100.0 * sorted.length );
+        return sorted[Math.max( 0, rank - 1 )];
+    }
+
+    private static String millis( long nanos )
+    {
+        return String.format( Locale.ROOT, "%.3f", nanos / 1e6 );
+    }
+
+    private static long perSecond( long amount, long nanos )
+    {
+        return nanos == 0 ? 0 : (long) ( amount * 1e9 / nanos );
+    }
+
+    private static void string( StringBuilder json, String value )
+    {
+        json.append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                json.append( '\\' )
+                        .append( c );
+            }
+            else if ( c < ' ' )
+            {
+                json.append( String.format( "\\u%04x", (int) c ) );
+            }
+            else
+            {
+                json.append( c );
+            }
+        }
+        json.append( '"' );
+    }
+
+    private static final class Phase
+    {
+        private int count;
+
+        private long nanos;
+
+        private long bytes;
+    }
+}
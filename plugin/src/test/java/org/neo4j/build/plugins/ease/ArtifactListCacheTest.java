@@ -0,0 +1,67 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class ArtifactListCacheTest
+{
+    @Test
+    public void sessionClonesShareOneCache() throws Exception
+    {
+        MavenSession session = new MavenSession( null,
+                new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult(),
+                Collections.<MavenProject>emptyList() );
+        session.setParallel( true );
+        MavenSession first = session.clone();
+        MavenSession second = session.clone();
+        assertSame( ArtifactListCache.forSession( first ),
+                ArtifactListCache.forSession( second ) );
+
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<List<String>> loader = new Callable<List<String>>()
+        {
+            @Override
+            public List<String> call()
+            {
+                loads.incrementAndGet();
+                return Collections.singletonList( "g:a:jar:1" );
+            }
+        };
+        ArtifactListCache.forSession( first )
+                .get( "g:nested:txt:artifacts:1 10 20", loader );
+        List<String> list = ArtifactListCache.forSession( second )
+                .get( "g:nested:txt:artifacts:1 10 20", loader );
+        assertEquals( Collections.singletonList( "g:a:jar:1" ), list );
+        assertEquals( 1, loads.get() );
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactListMergerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsAListSortedWithoutDuplicates() throws Exception
+    {
+        File list = new File( folder.getRoot(), "test-artifacts.txt" );
+        EaseHelper.writeArtifactList( Arrays.asList( "org.example:c:jar:1.0",
+                "org.example:a:jar:1.0", "org.example:c:jar:1.0",
+                "org.example:b:pom:1.0" ), list, new SystemStreamLog() );
+        assertEquals( Arrays.asList( "org.example:a:jar:1.0",
+                "org.example:b:pom:1.0", "org.example:c:jar:1.0" ),
+                ArtifactListMerger.readSortedChunk( list, new SystemStreamLog() ) );
+    }
+
+    @Test
+    public void readsTheIndexOfAListSorted() throws Exception
+    {
+        List<String> artifacts = Arrays.asList( "org.example:b:jar:1.0",
+                "org.example:a:jar:sources:1.0", "org.example:a:jar:1.0" );
+        File list = new File( folder.getRoot(), "test-artifacts.txt" );
+        EaseHelper.writeArtifactList( artifacts, list, new SystemStreamLog() );
+        File index = ArtifactListIndex.indexFileFor( list );
+        EaseHelper.writeArtifactIndex( artifacts, index, new SystemStreamLog() );
+        index.setLastModified( list.lastModified() + 1000 );
+        List<String> expected = new ArrayList<String>( artifacts );
+        Collections.sort( expected );
+        assertEquals( expected, ArtifactListMerger.readSortedChunk( list,
+                new SystemStreamLog() ) );
+    }
+
+    @Test
+    public void mergesChunksDroppingDuplicates()
+    {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        chunks.add( Arrays.asList( "a", "c", "e" ) );
+        chunks.add( Collections.<String>emptyList() );
+        chunks.add( Arrays.asList( "b", "c", "d" ) );
+        chunks.add( Arrays.asList( "a", "e", "f" ) );
+        assertEquals( Arrays.asList( "a", "b", "c", "d", "e", "f" ),
+                ArtifactListMerger.merge( chunks ) );
+    }
+
+    @Test
+    public void mergesLikeASortedSetOfAllChunks()
+    {
+        Random random = new Random( 42 );
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        TreeSet<String> expected = new TreeSet<String>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            TreeSet<String> chunk = new TreeSet<String>();
+            int size = random.nextInt( 50 );
+            for ( int j = 0; j < size; j++ )
+            {
+                chunk.add( "org.example:a" + random.nextInt( 200 ) + ":jar:1.0" );
+            }
+            expected.addAll( chunk );
+            chunks.add( new ArrayList<String>( chunk ) );
+        }
+        assertEquals( new ArrayList<String>( expected ),
+                ArtifactListMerger.merge( chunks ) );
+    }
+}
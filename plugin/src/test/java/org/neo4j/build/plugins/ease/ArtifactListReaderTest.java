@@ -0,0 +1,126 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactListReaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final WarningLog log = new WarningLog();
+
+    private final List<String> artifacts = Arrays.asList(
+            "org.example:b:jar:1.0", "org.example:a:jar:sources:1.0" );
+
+    /**
+     * What the index lists, deliberately unlike the text list, to tell which
+     * of the two was read.
+     */
+    private final List<String> indexed = Arrays.asList(
+            "org.example:c:jar:1.0", "org.example:d:pom:1.0" );
+
+    @Test
+    public void readsTheIndexWhenItIsCurrent() throws Exception
+    {
+        File list = writeList();
+        assertEntries( list, indexed );
+        assertEquals( 0, log.warnings );
+    }
+
+    @Test
+    public void readsTheTextListWhenTheIndexIsOlder() throws Exception
+    {
+        File list = writeList();
+        ArtifactListIndex.indexFileFor( list )
+                .setLastModified( list.lastModified() - 1000 );
+        assertEntries( list, artifacts );
+        assertEquals( 0, log.warnings );
+    }
+
+    @Test
+    public void fallsBackToTheTextListForATruncatedIndex() throws Exception
+    {
+        File list = writeList();
+        File index = ArtifactListIndex.indexFileFor( list );
+        RandomAccessFile file = new RandomAccessFile( index, "rw" );
+        try
+        {
+            file.setLength( file.length() - 6 );
+        }
+        finally
+        {
+            file.close();
+        }
+        assertEntries( list, artifacts );
+        assertEquals( 1, log.warnings );
+    }
+
+    private File writeList() throws Exception
+    {
+        File list = new File( folder.getRoot(), "test-artifacts.txt" );
+        EaseHelper.writeArtifactList( artifacts, list, new SystemStreamLog() );
+        File index = ArtifactListIndex.indexFileFor( list );
+        EaseHelper.writeArtifactIndex( indexed, index, new SystemStreamLog() );
+        index.setLastModified( list.lastModified() + 1000 );
+        return list;
+    }
+
+    private void assertEntries( File list, List<String> expected )
+            throws Exception
+    {
+        ArtifactListReader reader = ArtifactListReader.open( list, log );
+        try
+        {
+            for ( String artifact : expected )
+            {
+                assertEquals( artifact, reader.nextEntry()
+                        .toString() );
+            }
+            assertNull( reader.nextEntry() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static class WarningLog extends SystemStreamLog
+    {
+        private int warnings = 0;
+
+        @Override
+        public void warn( CharSequence content, Throwable error )
+        {
+            warnings++;
+        }
+    }
+}
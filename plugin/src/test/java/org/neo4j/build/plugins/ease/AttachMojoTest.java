@@ -0,0 +1,239 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.DefaultArtifactFactory;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.manager.DefaultArtifactHandlerManager;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AttachMojoTest
+{
+    private static final Charset US_ASCII = Charset.forName( "US-ASCII" );
+
+    private static final String NESTED = "org/example/nested/1.0/nested-1.0-artifacts.txt";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void walksReferencedListsInPlaceSkippingSeenCoordinates()
+            throws Exception
+    {
+        File nested = write( new File( folder.getRoot(), "nested-artifacts.txt" ),
+                "org.example:y:jar:1.0", "org.example:x:jar:1.0" );
+        File top = write( new File( folder.getRoot(), "top-artifacts.txt" ),
+                "org.example:x:jar:1.0",
+                "@org.example:nested:txt:artifacts:1.0 1 sha256:00",
+                "org.example:z:jar:1.0",
+                "@org.example:nested:txt:artifacts:1.0 1 sha256:00" );
+        ArtifactListWalker walker = new ArtifactListWalker( top,
+                new SystemStreamLog() );
+        List<String> walked = new ArrayList<String>();
+        try
+        {
+            ArtifactListEntry entry;
+            while ( ( entry = walker.next() ) != null )
+            {
+                walked.add( entry.toString() );
+                if ( entry.isReference() )
+                {
+                    walker.push( nested, true );
+                }
+            }
+        }
+        finally
+        {
+            walker.close();
+        }
+        assertEquals( Arrays.asList( "org.example:x:jar:1.0",
+                "@org.example:nested:txt:artifacts:1.0 1 sha256:00",
+                "org.example:y:jar:1.0", "org.example:z:jar:1.0" ), walked );
+    }
+
+    @Test
+    public void attachesTheArtifactsOfAVerifiedReference() throws Exception
+    {
+        File repository = repository();
+        File list = write( new File( folder.getRoot(), "top-artifacts.txt" ),
+                "org.example:x:jar:1.0", reference( repository ) );
+
+        AttachMojo mojo = attachMojo( list, repository );
+        mojo.execute();
+
+        List<String> attached = new ArrayList<String>();
+        for ( Artifact artifact : project( mojo ).getAttachedArtifacts() )
+        {
+            attached.add( artifact.getId() );
+            assertTrue( artifact.getFile()
+                    .isFile() );
+        }
+        assertEquals( Arrays.asList( "org.example:x:jar:1.0",
+                "org.example:nested:txt:artifacts:1.0",
+                "org.example:y:jar:1.0" ), attached );
+    }
+
+    @Test
+    public void failsOnAReferencedListNotMatchingItsChecksum()
+            throws Exception
+    {
+        File repository = repository();
+        String reference = reference( repository );
+        File list = write( new File( folder.getRoot(), "top-artifacts.txt" ),
+                "org.example:x:jar:1.0",
+                reference.substring( 0, reference.length() - 4 ) + "0000" );
+        try
+        {
+            attachMojo( list, repository ).execute();
+            fail( "The referenced list does not match its checksum." );
+        }
+        catch ( MojoExecutionException mee )
+        {
+            assertTrue( mee.getMessage(), mee.getMessage()
+                    .startsWith( "Artifact file does not match the artifact list: " ) );
+        }
+    }
+
+    /**
+     * A repository with a referenced list which lists an artifact again, and
+     * references itself.
+     */
+    private File repository() throws Exception
+    {
+        File repository = folder.newFolder( "repository" );
+        write( new File( repository, "org/example/x/1.0/x-1.0.jar" ), "x" );
+        write( new File( repository, "org/example/y/1.0/y-1.0.jar" ), "y" );
+        write( new File( repository, NESTED ), "org.example:y:jar:1.0",
+                "org.example:x:jar:1.0",
+                "@org.example:nested:txt:artifacts:1.0 1 sha256:00" );
+        return repository;
+    }
+
+    private static String reference( File repository ) throws Exception
+    {
+        File nested = new File( repository, NESTED );
+        return new ArtifactListEntry( new CoordinatesPool().coordinates(
+                "org.example", "nested", "txt", "artifacts", "1.0" ),
+                nested.length(), Checksums.checksum( nested,
+                        Checksums.label( "SHA-256" ) ), true ).toString();
+    }
+
+    private AttachMojo attachMojo( File list, File repository )
+            throws Exception
+    {
+        Model model = new Model();
+        model.setGroupId( "org.example" );
+        model.setArtifactId( "release" );
+        model.setVersion( "1.0" );
+        model.setBuild( new Build() );
+        MavenProject project = new MavenProject( model );
+        project.getBuild()
+                .setDirectory( new File( folder.getRoot(), "target" ).getAbsolutePath() );
+
+        DefaultArtifactHandlerManager handlers = new DefaultArtifactHandlerManager();
+        set( handlers, "artifactHandlers",
+                new HashMap<String, ArtifactHandler>() );
+        DefaultArtifactFactory artifactFactory = new DefaultArtifactFactory();
+        set( artifactFactory, "artifactHandlerManager", handlers );
+
+        ArtifactRepositoryPolicy policy = new ArtifactRepositoryPolicy();
+        MavenArtifactRepository localRepository = new MavenArtifactRepository(
+                "local", new File( folder.getRoot(), "local" ).toURI()
+                        .toString(), new DefaultRepositoryLayout(), policy,
+                policy );
+
+        AttachMojo mojo = new AttachMojo();
+        set( mojo, "artifactListLocation", list.getAbsolutePath() );
+        set( mojo, "artifactRepositoryLocation", repository.getAbsolutePath() );
+        set( mojo, "attachThreads", 2 );
+        set( mojo, "stagingMode", "copy" );
+        set( mojo, "verifyChecksums", true );
+        set( mojo, "project", project );
+        set( mojo, "artifactFactory", artifactFactory );
+        set( mojo, "localRepository", localRepository );
+        return mojo;
+    }
+
+    private static MavenProject project( AttachMojo mojo ) throws Exception
+    {
+        Field field = AttachMojo.class.getDeclaredField( "project" );
+        field.setAccessible( true );
+        return (MavenProject) field.get( mojo );
+    }
+
+    private static File write( File file, String... lines ) throws Exception
+    {
+        file.getParentFile()
+                .mkdirs();
+        StringBuilder content = new StringBuilder();
+        for ( String line : lines )
+        {
+            content.append( line )
+                    .append( '\n' );
+        }
+        Files.write( file.toPath(), content.toString()
+                .getBytes( US_ASCII ) );
+        return file;
+    }
+
+    private static void set( Object target, String name, Object value )
+            throws Exception
+    {
+        Class<?> type = target.getClass();
+        while ( type != null )
+        {
+            try
+            {
+                Field field = type.getDeclaredField( name );
+                field.setAccessible( true );
+                field.set( target, value );
+                return;
+            }
+            catch ( NoSuchFieldException nsfe )
+            {
+                type = type.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException( name );
+    }
+}
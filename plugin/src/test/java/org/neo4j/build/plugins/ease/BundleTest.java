@@ -0,0 +1,254 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BundleTest
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final long MODIFIED = 1234567890000L;
+
+    private final ExecutorService executor = EaseHelper.newExecutor( 3 );
+
+    private final Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+
+    public BundleTest()
+    {
+        Random random = new Random( 42 );
+        files.put( "checksums.sha256", "abc  g/a/1/a-1.jar\n".getBytes( UTF_8 ) );
+        // fits the ustar prefix and name fields once split
+        files.put( path( "org/example/", 59 ) + "/" + path( "artifact-", 50 )
+                   + ".jar", bytes( random, 1000 ) );
+        // can't be split, needs a pax header
+        files.put( path( "long-directory-name-", 220 ) + "/a.pom",
+                bytes( random, 0 ) );
+        // spans several independently compressed gzip blocks
+        files.put( "org/example/big/1.0/big-1.0.jar", bytes( random,
+                ParallelGzipOutputStream.BLOCK_SIZE * 5 / 2 ) );
+    }
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void tarGzReadsBackWithGzipAndTar() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write( Bundle.tar( new ParallelGzipOutputStream( out, executor, 2, 6 ) ) );
+
+        Map<String, byte[]> read = readTar( new GZIPInputStream(
+                new ByteArrayInputStream( out.toByteArray() ) ) );
+        assertFiles( read );
+    }
+
+    @Test
+    public void tarReadsBack() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write( Bundle.tar( out ) );
+        assertEquals( 0, out.size() % 512 );
+        assertFiles( readTar( new ByteArrayInputStream( out.toByteArray() ) ) );
+    }
+
+    @Test
+    public void zipReadsBack() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write( Bundle.zip( out, 6 ) );
+
+        Map<String, byte[]> read = new LinkedHashMap<String, byte[]>();
+        ZipInputStream in = new ZipInputStream( new ByteArrayInputStream(
+                out.toByteArray() ), UTF_8 );
+        ZipEntry entry;
+        while ( ( entry = in.getNextEntry() ) != null )
+        {
+            read.put( entry.getName(), readFully( in ) );
+        }
+        assertFiles( read );
+    }
+
+    private void write( Bundle bundle ) throws IOException
+    {
+        for ( Map.Entry<String, byte[]> file : files.entrySet() )
+        {
+            byte[] content = file.getValue();
+            bundle.add( file.getKey(), content.length, MODIFIED,
+                    new ByteArrayInputStream( content ) );
+        }
+        bundle.close();
+    }
+
+    private void assertFiles( Map<String, byte[]> read )
+    {
+        assertEquals( files.keySet(), read.keySet() );
+        for ( Map.Entry<String, byte[]> file : files.entrySet() )
+        {
+            assertArrayEquals( file.getKey(), file.getValue(),
+                    read.get( file.getKey() ) );
+        }
+    }
+
+    /**
+     * Reads ustar records and pax path headers, checking header checksums.
+     */
+    private static Map<String, byte[]> readTar( InputStream stream )
+            throws IOException
+    {
+        DataInputStream in = new DataInputStream( stream );
+        Map<String, byte[]> read = new LinkedHashMap<String, byte[]>();
+        String paxPath = null;
+        byte[] header = new byte[512];
+        while ( true )
+        {
+            in.readFully( header );
+            if ( isZero( header ) )
+            {
+                in.readFully( header );
+                assertEquals( true, isZero( header ) );
+                assertEquals( -1, in.read() );
+                return read;
+            }
+            assertEquals( "ustar\u000000", new String( header, 257, 8, UTF_8 ) );
+            long checksum = 0;
+            for ( int i = 0; i < header.length; i++ )
+            {
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+            }
+            // six digits, a NUL and a space
+            assertEquals( checksum, octal( header, 148, 6 ) );
+            assertEquals( ' ', header[155] );
+            assertEquals( MODIFIED / 1000, octal( header, 136, 11 ) );
+            long size = octal( header, 124, 11 );
+            byte[] content = new byte[(int) size];
+            in.readFully( content );
+            in.readFully( new byte[(int) ( ( 512 - size % 512 ) % 512 )] );
+            if ( header[156] == 'x' )
+            {
+                paxPath = paxPath( new String( content, UTF_8 ) );
+                continue;
+            }
+            assertEquals( '0', header[156] );
+            String name = string( header, 0, 100 );
+            String prefix = string( header, 345, 155 );
+            String path = paxPath != null ? paxPath : prefix.isEmpty() ? name
+                    : prefix + '/' + name;
+            paxPath = null;
+            read.put( path, content );
+        }
+    }
+
+    private static String paxPath( String records )
+    {
+        String path = null;
+        int position = 0;
+        while ( position < records.length() )
+        {
+            int space = records.indexOf( ' ', position );
+            int length = Integer.parseInt( records.substring( position, space ) );
+            String record = records.substring( space + 1, position + length - 1 );
+            if ( record.startsWith( "path=" ) )
+            {
+                path = record.substring( "path=".length() );
+            }
+            position += length;
+        }
+        assertEquals( records.length(), position );
+        return path;
+    }
+
+    private static boolean isZero( byte[] header )
+    {
+        for ( byte b : header )
+        {
+            if ( b != 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long octal( byte[] header, int offset, int length )
+    {
+        assertEquals( 0, header[offset + length] );
+        return Long.parseLong( new String( header, offset, length, UTF_8 ), 8 );
+    }
+
+    private static String string( byte[] header, int offset, int length )
+    {
+        int end = offset;
+        while ( end < offset + length && header[end] != 0 )
+        {
+            end++;
+        }
+        return new String( header, offset, end - offset, UTF_8 );
+    }
+
+    private static byte[] readFully( InputStream in ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            out.write( buffer, 0, read );
+        }
+        return out.toByteArray();
+    }
+
+    private static String path( String part, int length )
+    {
+        StringBuilder path = new StringBuilder();
+        while ( path.length() < length )
+        {
+            path.append( part );
+        }
+        return path.substring( 0, length );
+    }
+
+    private static byte[] bytes( Random random, int size )
+    {
+        byte[] bytes = new byte[size];
+        random.nextBytes( bytes );
+        return bytes;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+public class CoordinatesTest
+{
+    private final CoordinatesPool pool = new CoordinatesPool();
+
+    @Test
+    public void parsesCoordinatesWithAndWithoutClassifier() throws Exception
+    {
+        Coordinates coordinates = Coordinates.parse( "g:a:jar:1.0", pool );
+        assertEquals( "g", coordinates.getGroupId() );
+        assertEquals( "a", coordinates.getArtifactId() );
+        assertEquals( "jar", coordinates.getType() );
+        assertNull( coordinates.getClassifier() );
+        assertEquals( "1.0", coordinates.getVersion() );
+        assertEquals( "sources",
+                Coordinates.parse( "g:a:jar:sources:1.0", pool )
+                        .getClassifier() );
+    }
+
+    @Test
+    public void rejectsEmptyParts()
+    {
+        for ( String text : new String[] { "g:a:jar:", ":a:jar:1.0",
+                "g::jar:1.0", "g:a::1.0", "g:a:jar:sources:", "g:a:jar",
+                "g:a:jar:sources:1.0:x" } )
+        {
+            try
+            {
+                Coordinates.parse( text, pool );
+                fail( "Parsed: " + text );
+            }
+            catch ( MojoExecutionException mee )
+            {
+                assertEquals( "Can not parse coordinates: " + text,
+                        mee.getMessage() );
+            }
+        }
+    }
+}
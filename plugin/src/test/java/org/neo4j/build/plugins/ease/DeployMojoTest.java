@@ -0,0 +1,264 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.factory.DefaultArtifactFactory;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.manager.DefaultArtifactHandlerManager;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class DeployMojoTest
+{
+    private static final Charset US_ASCII = Charset.forName( "US-ASCII" );
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, byte[]> uploads = new ConcurrentHashMap<String, byte[]>();
+
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/repo/", new HttpHandler()
+        {
+            @Override
+            public void handle( HttpExchange exchange ) throws IOException
+            {
+                if ( "PUT".equals( exchange.getRequestMethod() ) )
+                {
+                    uploads.put( exchange.getRequestURI()
+                            .getPath()
+                            .substring( "/repo/".length() ),
+                            read( exchange.getRequestBody() ) );
+                    exchange.sendResponseHeaders( 201, -1 );
+                }
+                else
+                {
+                    exchange.sendResponseHeaders( 405, -1 );
+                }
+                exchange.close();
+            }
+        } );
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop( 0 );
+    }
+
+    @Test
+    public void uploadsArtifactsWithChecksums() throws Exception
+    {
+        File repository = folder.newFolder( "source" );
+        // the same file name in two groups, staged at the same time
+        byte[] one = artifact( repository, "org/one/lib/1.0/lib-1.0.jar", "one" );
+        byte[] two = artifact( repository, "org/two/lib/1.0/lib-1.0.jar", "two" );
+        byte[] pom = artifact( repository, "org/two/lib/1.0/lib-1.0.pom", "pom" );
+        File list = folder.newFile( "artifacts.txt" );
+        Files.write( list.toPath(), ( "org.one:lib:jar:1.0\n"
+                                      + "org.two:lib:jar:1.0\n"
+                                      + "org.two:lib:pom:1.0\n" ).getBytes( US_ASCII ) );
+
+        DeployMojo mojo = deployMojo( list, repository, "copy" );
+        mojo.execute();
+
+        assertEquals( 9, uploads.size() );
+        assertUploaded( "org/one/lib/1.0/lib-1.0.jar", one );
+        assertUploaded( "org/two/lib/1.0/lib-1.0.jar", two );
+        assertUploaded( "org/two/lib/1.0/lib-1.0.pom", pom );
+    }
+
+    @Test
+    public void resumeSkipsUploadedArtifactsWithoutStagingThem()
+            throws Exception
+    {
+        File repository = folder.newFolder( "source" );
+        artifact( repository, "org/one/lib/1.0/lib-1.0.jar", "one" );
+        byte[] two = artifact( repository, "org/two/lib/1.0/lib-1.0.jar", "two" );
+        File list = folder.newFile( "artifacts.txt" );
+        Files.write( list.toPath(), "org.one:lib:jar:1.0\n".getBytes( US_ASCII ) );
+        DeployMojo mojo = deployMojo( list, repository, "copy" );
+        set( mojo, "useJournal", true );
+        mojo.execute();
+        assertEquals( 3, uploads.size() );
+
+        uploads.clear();
+        File staging = new File( buildDir(), "ease-staging" );
+        FileUtils.deleteDirectory( staging );
+        Files.write( list.toPath(), ( "org.one:lib:jar:1.0\n"
+                                      + "org.two:lib:jar:1.0\n" ).getBytes( US_ASCII ) );
+        mojo = deployMojo( list, repository, "copy" );
+        set( mojo, "resume", true );
+        mojo.execute();
+
+        assertEquals( 3, uploads.size() );
+        assertUploaded( "org/two/lib/1.0/lib-1.0.jar", two );
+        assertFalse( new File( staging, "org/one" ).exists() );
+    }
+
+    private File buildDir()
+    {
+        return new File( folder.getRoot(), "target" );
+    }
+
+    private void assertUploaded( String path, byte[] content )
+            throws Exception
+    {
+        assertArrayEquals( path, content, uploads.get( path ) );
+        assertEquals( hex( "SHA-1", content ), new String(
+                uploads.get( path + ".sha1" ), US_ASCII ) );
+        assertEquals( hex( "MD5", content ), new String(
+                uploads.get( path + ".md5" ), US_ASCII ) );
+    }
+
+    private DeployMojo deployMojo( File list, File repository,
+            String stagingMode ) throws Exception
+    {
+        Model model = new Model();
+        model.setGroupId( "org.example" );
+        model.setArtifactId( "release" );
+        model.setVersion( "1.0" );
+        model.setBuild( new Build() );
+        MavenProject project = new MavenProject( model );
+        project.getBuild()
+                .setDirectory( buildDir().getAbsolutePath() );
+
+        DefaultArtifactHandlerManager handlers = new DefaultArtifactHandlerManager();
+        set( handlers, "artifactHandlers",
+                new HashMap<String, ArtifactHandler>() );
+        DefaultArtifactFactory artifactFactory = new DefaultArtifactFactory();
+        set( artifactFactory, "artifactHandlerManager", handlers );
+
+        ArtifactRepositoryPolicy policy = new ArtifactRepositoryPolicy();
+        MavenArtifactRepository localRepository = new MavenArtifactRepository(
+                "local", new File( folder.getRoot(), "local" ).toURI()
+                        .toString(), new DefaultRepositoryLayout(), policy,
+                policy );
+
+        DeployMojo mojo = new DeployMojo();
+        set( mojo, "artifactListLocation", list.getAbsolutePath() );
+        set( mojo, "artifactRepositoryLocation", repository.getAbsolutePath() );
+        set( mojo, "repositoryUrl", "http://127.0.0.1:"
+                                    + server.getAddress()
+                                            .getPort() + "/repo" );
+        set( mojo, "uploadThreads", 4 );
+        set( mojo, "stageThreads", 4 );
+        set( mojo, "queueSize", 8 );
+        set( mojo, "stagingMode", stagingMode );
+        set( mojo, "verifyChecksums", true );
+        set( mojo, "project", project );
+        set( mojo, "settings", new Settings() );
+        set( mojo, "artifactFactory", artifactFactory );
+        set( mojo, "localRepository", localRepository );
+        return mojo;
+    }
+
+    private static byte[] artifact( File repository, String path,
+            String content ) throws IOException
+    {
+        File file = new File( repository, path );
+        file.getParentFile()
+                .mkdirs();
+        byte[] bytes = new byte[64 * 1024];
+        Arrays.fill( bytes, (byte) content.hashCode() );
+        System.arraycopy( content.getBytes( US_ASCII ), 0, bytes, 0,
+                content.length() );
+        Files.write( file.toPath(), bytes );
+        return bytes;
+    }
+
+    private static String hex( String algorithm, byte[] content )
+            throws Exception
+    {
+        return Checksums.hex( MessageDigest.getInstance( algorithm )
+                .digest( content ) );
+    }
+
+    private static byte[] read( InputStream in ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            out.write( buffer, 0, read );
+        }
+        return out.toByteArray();
+    }
+
+    private static void set( Object target, String name, Object value )
+            throws Exception
+    {
+        Class<?> type = target.getClass();
+        while ( type != null )
+        {
+            try
+            {
+                Field field = type.getDeclaredField( name );
+                field.setAccessible( true );
+                field.set( target, value );
+                return;
+            }
+            catch ( NoSuchFieldException nsfe )
+            {
+                type = type.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException( name );
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.resolver.filter.AndArtifactFilter;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.artifact.filter.StrictPatternExcludesArtifactFilter;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.apache.maven.shared.dependency.tree.traversal.CollectingDependencyNodeVisitor;
+import org.junit.Test;
+
+public class FilteringCollectorTest
+{
+    private final DependencyNode root = node( "root" );
+
+    private final ArtifactFilter excludes = new StrictPatternExcludesArtifactFilter(
+            Arrays.asList( "org.example:excluded-a", "org.example:excluded-b",
+                    "org.example:excluded-c" ) );
+
+    public FilteringCollectorTest()
+    {
+        // root -> excluded-a -> kept-below-excluded -> kept-deep
+        DependencyNode excludedA = child( root, "excluded-a" );
+        child( child( excludedA, "kept-below-excluded" ), "kept-deep" );
+        // root -> excluded-b -> excluded-c and kept-leaf (omitted)
+        DependencyNode excludedB = child( root, "excluded-b" );
+        child( excludedB, "excluded-c" );
+        excludedB.addChild( new DependencyNode( artifact( "kept-leaf" ),
+                DependencyNode.OMITTED_FOR_DUPLICATE, artifact( "kept-leaf" ) ) );
+        // root -> kept -> kept-leaf
+        child( child( root, "kept" ), "kept-leaf" );
+    }
+
+    @Test
+    public void collectsTheSameArtifactsAsFilteringAllNodes()
+    {
+        CollectingDependencyNodeVisitor all = new CollectingDependencyNodeVisitor();
+        root.accept( all );
+        Set<Artifact> filtered = new HashSet<Artifact>();
+        for ( Object node : all.getNodes() )
+        {
+            DependencyNode dependencyNode = (DependencyNode) node;
+            if ( dependencyNode.getState() == DependencyNode.INCLUDED
+                 && filter().include( dependencyNode.getArtifact() ) )
+            {
+                filtered.add( dependencyNode.getArtifact() );
+            }
+        }
+        assertEquals( filtered, collect() );
+    }
+
+    @Test
+    public void includedArtifactsBelowExcludedOnesAreKept()
+    {
+        Set<Artifact> collected = collect();
+        assertTrue( collected.contains( artifact( "kept-below-excluded" ) ) );
+        assertTrue( collected.contains( artifact( "kept-deep" ) ) );
+        assertTrue( collected.contains( artifact( "kept-leaf" ) ) );
+        assertFalse( collected.contains( artifact( "excluded-a" ) ) );
+        assertFalse( collected.contains( artifact( "excluded-c" ) ) );
+    }
+
+    private Set<Artifact> collect()
+    {
+        AggregateMojo.FilteringCollector collector = new AggregateMojo.FilteringCollector(
+                filter() );
+        root.accept( collector );
+        return collector.artifacts;
+    }
+
+    private ArtifactFilter filter()
+    {
+        AndArtifactFilter filter = new AndArtifactFilter();
+        filter.add( excludes );
+        return filter;
+    }
+
+    private static DependencyNode child( DependencyNode parent,
+            String artifactId )
+    {
+        DependencyNode child = node( artifactId );
+        parent.addChild( child );
+        return child;
+    }
+
+    private static DependencyNode node( String artifactId )
+    {
+        return new DependencyNode( artifact( artifactId ) );
+    }
+
+    private static Artifact artifact( String artifactId )
+    {
+        return new DefaultArtifact( "org.example", artifactId,
+                VersionRange.createFromVersion( "1.0" ), "compile", "jar",
+                null, new DefaultArtifactHandler( "jar" ) );
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesTheRecordsOfAnEarlierRun() throws Exception
+    {
+        File file = new File( folder.getRoot(), "test.journal" );
+        Journal journal = Journal.open( file, "header", false );
+        journal.record( "g:a:jar:1", "sha1:aa" );
+        journal.record( "g:b:jar:1", "sha1:bb" );
+        journal.close();
+
+        journal = Journal.open( file, "header", true );
+        try
+        {
+            assertEquals( 2, journal.resumed() );
+            assertTrue( journal.isCompleted( "g:a:jar:1", "sha1:aa" ) );
+            assertFalse( journal.isCompleted( "g:a:jar:1", "sha1:cc" ) );
+            assertFalse( journal.isCompleted( "g:c:jar:1", "sha1:aa" ) );
+        }
+        finally
+        {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void startsOverWithoutResumeOrForAnotherHeader() throws Exception
+    {
+        File file = new File( folder.getRoot(), "test.journal" );
+        Journal journal = Journal.open( file, "header", false );
+        journal.record( "g:a:jar:1", "sha1:aa" );
+        journal.close();
+
+        journal = Journal.open( file, "other header", true );
+        assertEquals( 0, journal.resumed() );
+        journal.close();
+        journal = Journal.open( file, "other header", false );
+        assertEquals( 0, journal.resumed() );
+        journal.close();
+    }
+
+    @Test
+    public void ignoresAndEndsATornLine() throws Exception
+    {
+        File file = new File( folder.getRoot(), "test.journal" );
+        Journal journal = Journal.open( file, "header", false );
+        journal.record( "g:a:jar:1", "sha1:aa" );
+        journal.close();
+        // a crash in the middle of writing the next record
+        Files.write( file.toPath(), "g:b:jar:1".getBytes( UTF_8 ),
+                StandardOpenOption.APPEND );
+
+        journal = Journal.open( file, "header", true );
+        assertEquals( 1, journal.resumed() );
+        assertFalse( journal.isCompleted( "g:b:jar:1", "" ) );
+        journal.record( "g:c:jar:1", "sha1:cc" );
+        journal.close();
+
+        List<String> lines = Files.readAllLines( file.toPath(), UTF_8 );
+        assertEquals( "g:b:jar:1", lines.get( 2 ) );
+        assertEquals( "g:c:jar:1 sha1:cc", lines.get( 3 ) );
+        journal = Journal.open( file, "header", true );
+        try
+        {
+            assertEquals( 2, journal.resumed() );
+            assertTrue( journal.isCompleted( "g:c:jar:1", "sha1:cc" ) );
+        }
+        finally
+        {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Locale;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
+import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketVector;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.bc.BcPGPKeyPair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PgpSignerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Test
+    public void skipsARevokedSubkey() throws Exception
+    {
+        PGPKeyPair primary = keyPair();
+        PGPKeyPair revoked = keyPair();
+        PGPKeyPair valid = keyPair();
+        PGPKeyRingGenerator generator = ringGenerator( primary,
+                KeyFlags.CERTIFY_OTHER );
+        generator.addSubKey( revoked, flags( KeyFlags.SIGN_DATA ), null );
+        generator.addSubKey( valid, flags( KeyFlags.SIGN_DATA ), null );
+        PGPSecretKeyRing ring = generator.generateSecretKeyRing();
+        ring = revoke( ring, primary, revoked.getKeyID(),
+                PGPSignature.SUBKEY_REVOCATION );
+        File keyring = write( ring );
+
+        assertEquals( valid.getKeyID(), signingKeyId( keyring, null ) );
+        assertNoSigningKey( keyring,
+                String.format( "%016X", revoked.getKeyID() ) );
+    }
+
+    @Test
+    public void skipsARevokedPrimaryKey() throws Exception
+    {
+        PGPKeyPair primary = keyPair();
+        PGPKeyPair subkey = keyPair();
+        PGPKeyRingGenerator generator = ringGenerator( primary,
+                KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA );
+        generator.addSubKey( subkey, flags( KeyFlags.SIGN_DATA ), null );
+        PGPSecretKeyRing ring = revoke( generator.generateSecretKeyRing(),
+                primary, primary.getKeyID(), PGPSignature.KEY_REVOCATION );
+
+        assertNoSigningKey( write( ring ), null );
+    }
+
+    @Test
+    public void matchesKeyIdsIgnoringCase() throws Exception
+    {
+        PGPKeyPair primary = keyPair();
+        PGPKeyRingGenerator generator = ringGenerator( primary,
+                KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA );
+        File keyring = write( generator.generateSecretKeyRing() );
+        String keyId = String.format( "%016X", primary.getKeyID() );
+
+        assertEquals( primary.getKeyID(), signingKeyId( keyring,
+                "0x" + keyId.toLowerCase( Locale.ENGLISH ) ) );
+        assertEquals( primary.getKeyID(), signingKeyId( keyring,
+                keyId.substring( 8 ) ) );
+        assertEquals( primary.getKeyID(), signingKeyId( keyring, "TEST@EXAMPLE" ) );
+    }
+
+    private long signingKeyId( File keyring, String keyname ) throws Exception
+    {
+        File file = folder.newFile();
+        Files.write( file.toPath(), new byte[] { 1, 2, 3 } );
+        File signature = new File( file.getPath() + ".asc" );
+        PgpSigner.load( keyring, keyname, "" )
+                .sign( file, signature );
+        InputStream in = PGPUtil.getDecoderStream( new FileInputStream(
+                signature ) );
+        try
+        {
+            PGPSignatureList signatures = (PGPSignatureList) new BcPGPObjectFactory(
+                    in ).nextObject();
+            return signatures.get( 0 )
+                    .getKeyID();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void assertNoSigningKey( File keyring, String keyname )
+            throws Exception
+    {
+        try
+        {
+            PgpSigner.load( keyring, keyname, "" );
+            fail( "Found a signing key for: " + keyname );
+        }
+        catch ( PGPException pgpe )
+        {
+            // expected
+        }
+    }
+
+    private PGPKeyPair keyPair() throws PGPException
+    {
+        RSAKeyPairGenerator generator = new RSAKeyPairGenerator();
+        generator.init( new RSAKeyGenerationParameters(
+                BigInteger.valueOf( 0x10001 ), random, 1024, 12 ) );
+        return new BcPGPKeyPair( PGPPublicKey.RSA_GENERAL,
+                generator.generateKeyPair(), new Date() );
+    }
+
+    private static PGPKeyRingGenerator ringGenerator( PGPKeyPair primary,
+            int keyFlags ) throws PGPException
+    {
+        return new PGPKeyRingGenerator( PGPSignature.POSITIVE_CERTIFICATION,
+                primary, "Test <test@example.org>",
+                new BcPGPDigestCalculatorProvider().get( HashAlgorithmTags.SHA1 ),
+                flags( keyFlags ), null, new BcPGPContentSignerBuilder(
+                        PGPPublicKey.RSA_GENERAL, HashAlgorithmTags.SHA256 ),
+                null );
+    }
+
+    private static PGPSignatureSubpacketVector flags( int keyFlags )
+    {
+        PGPSignatureSubpacketGenerator subpackets = new PGPSignatureSubpacketGenerator();
+        subpackets.setKeyFlags( false, keyFlags );
+        return subpackets.generate();
+    }
+
+    /**
+     * Adds a revocation signature by the primary key to a key of the ring.
+     */
+    private static PGPSecretKeyRing revoke( PGPSecretKeyRing ring,
+            PGPKeyPair primary, long keyId, int revocationType )
+            throws PGPException
+    {
+        PGPSecretKey secretKey = ring.getSecretKey( keyId );
+        PGPSignatureGenerator generator = new PGPSignatureGenerator(
+                new BcPGPContentSignerBuilder( PGPPublicKey.RSA_GENERAL,
+                        HashAlgorithmTags.SHA256 ) );
+        generator.init( revocationType, primary.getPrivateKey() );
+        PGPSignature revocation;
+        if ( keyId == primary.getKeyID() )
+        {
+            revocation = generator.generateCertification( secretKey.getPublicKey() );
+        }
+        else
+        {
+            revocation = generator.generateCertification(
+                    primary.getPublicKey(), secretKey.getPublicKey() );
+        }
+        PGPPublicKey revoked = PGPPublicKey.addCertification(
+                secretKey.getPublicKey(), revocation );
+        return PGPSecretKeyRing.insertSecretKey( ring,
+                PGPSecretKey.replacePublicKey( secretKey, revoked ) );
+    }
+
+    private File write( PGPSecretKeyRing ring ) throws Exception
+    {
+        File keyring = folder.newFile( "secring.gpg" );
+        OutputStream out = new FileOutputStream( keyring );
+        try
+        {
+            ring.encode( out );
+        }
+        finally
+        {
+            out.close();
+        }
+        return keyring;
+    }
+}
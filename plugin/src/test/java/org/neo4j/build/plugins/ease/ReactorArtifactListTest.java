@@ -0,0 +1,77 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class ReactorArtifactListTest
+{
+    private final MavenProject one = project( "one" );
+
+    private final MavenProject two = project( "two" );
+
+    @Test
+    public void combinesTheListsOfSessionClones()
+    {
+        MavenSession session = new MavenSession( null,
+                new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult(), Arrays.asList( one, two ) );
+        session.setParallel( true );
+        // parallel builds hand every module its own clone of the session
+        MavenSession first = session.clone();
+        MavenSession second = session.clone();
+        assertSame( ReactorArtifactList.forSession( first ),
+                ReactorArtifactList.forSession( second ) );
+
+        MojoExecution execution = new MojoExecution( new MojoDescriptor(),
+                "default-cli", MojoExecution.Source.CLI );
+        assertNull( ReactorArtifactList.forSession( second )
+                .add( second, two, Collections.singletonList( "g:two:jar:1" ),
+                        execution, new SystemStreamLog() ) );
+        List<String> combined = ReactorArtifactList.forSession( first )
+                .add( first, one, Collections.singletonList( "g:one:jar:1" ),
+                        execution, new SystemStreamLog() );
+        assertEquals( Arrays.asList( "g:one:jar:1", "g:two:jar:1" ), combined );
+    }
+
+    private static MavenProject project( String artifactId )
+    {
+        Model model = new Model();
+        model.setGroupId( "g" );
+        model.setArtifactId( artifactId );
+        model.setVersion( "1" );
+        return new MavenProject( model );
+    }
+}
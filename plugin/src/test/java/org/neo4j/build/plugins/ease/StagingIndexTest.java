@@ -0,0 +1,121 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.build.plugins.ease;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingIndexTest
+{
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private static final String KEY = "org.example:a:jar:1.0";
+
+    private static final long MODIFIED = 1000000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File indexFile;
+
+    private File source;
+
+    private File destination;
+
+    @Before
+    public void stageOnce() throws Exception
+    {
+        indexFile = new File( folder.getRoot(), "staging.properties" );
+        source = write( new File( folder.getRoot(), "a-1.0.jar" ), "content" );
+        source.setLastModified( MODIFIED );
+        destination = new File( folder.newFolder( "staged" ), "a-1.0.jar" );
+        stage();
+        assertContent( "content" );
+    }
+
+    @Test
+    public void keepsTheStagedCopyWhenModificationTimesMatch()
+            throws Exception
+    {
+        // not even read: only the modification times are compared
+        write( destination, "changed" );
+        destination.setLastModified( MODIFIED );
+        stage();
+        assertContent( "changed" );
+    }
+
+    @Test
+    public void comparesChecksumsWhenModificationTimesDiffer()
+            throws Exception
+    {
+        long touched = MODIFIED + 60000;
+        destination.setLastModified( touched );
+        stage();
+        assertContent( "content" );
+        // the same content is not copied again
+        assertEquals( touched, destination.lastModified() );
+    }
+
+    @Test
+    public void copiesAgainWhenTheStagedContentChanged() throws Exception
+    {
+        write( destination, "changed" );
+        destination.setLastModified( MODIFIED + 60000 );
+        stage();
+        assertContent( "content" );
+        assertEquals( MODIFIED, destination.lastModified() );
+    }
+
+    @Test
+    public void copiesAgainWhenTheSourceChanged() throws Exception
+    {
+        write( source, "updated" );
+        source.setLastModified( MODIFIED + 60000 );
+        stage();
+        assertContent( "updated" );
+    }
+
+    private void stage() throws Exception
+    {
+        StagingIndex index = StagingIndex.load( indexFile );
+        index.stage( KEY, source, destination, null );
+        index.save();
+    }
+
+    private void assertContent( String content ) throws Exception
+    {
+        assertArrayEquals( content.getBytes( UTF_8 ),
+                Files.readAllBytes( destination.toPath() ) );
+    }
+
+    private static File write( File file, String content ) throws Exception
+    {
+        Files.write( file.toPath(), content.getBytes( UTF_8 ) );
+        return file;
+    }
+}